@@ -0,0 +1,123 @@
+package com.planme.alarms.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Schedule, cancel and next-due throughput of AlarmEngine at increasing alarm counts, in queue mode
+// against a backend that does nothing, so only the engine's own work is measured. Run with
+// ./gradlew :alarm-core:jmh; the gc profiler adds the allocation rate per operation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AlarmEngineBenchmark {
+    private static final long START = 1_800_000_000_000L;
+    private static final long SPAN_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final int TIMES = 4096;
+
+    private static final AlarmBackend NO_BACKEND = new AlarmBackend() {
+        @Override
+        public boolean canScheduleExact() {
+            return true;
+        }
+
+        @Override
+        public void register(AlarmRecord record, int deliveryClass) {
+        }
+
+        @Override
+        public void unregister(int alarmId) {
+        }
+
+        @Override
+        public void armQueue(long time) {
+        }
+
+        @Override
+        public void disarmQueue() {
+        }
+    };
+
+    @Param({"1000", "100000", "1000000"})
+    public int alarms;
+
+    private AlarmEngine engine;
+    private AlarmRecord[] records;
+    // Precomputed so the measured loop does no random number generation
+    private long[] times;
+    private int cursor;
+    private RecurrenceRule weekdays;
+    private ZoneId zone;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<AlarmRecord> initial = new ArrayList<>(alarms);
+        records = new AlarmRecord[alarms];
+        for (int i = 0; i < alarms; i++) {
+            records[i] = new AlarmRecord(i + 1, START + (long) (random.nextDouble() * SPAN_MS), "Alarm " + i,
+                "Body", "red", "alarm_sound", 5, RecurrenceRule.ONCE);
+            initial.add(records[i]);
+        }
+        engine = new AlarmEngine(new MemoryAlarmRegistry(), NO_BACKEND, true, 0L);
+        engine.scheduleAll(initial);
+        times = new long[TIMES];
+        for (int i = 0; i < TIMES; i++) {
+            times[i] = START + (long) (random.nextDouble() * SPAN_MS);
+        }
+        weekdays = new RecurrenceRule(RecurrenceRule.WEEKLY, 7 * 3600, 0b11111, 0, 0, new long[0]);
+        zone = ZoneId.of("America/New_York");
+    }
+
+    // Moves an existing alarm to a new time: registry write plus a queue update
+    @Benchmark
+    public void reschedule() {
+        int i = cursor++;
+        AlarmRecord record = records[i % alarms];
+        engine.schedule(record.withScheduledTime(times[i & (TIMES - 1)]));
+    }
+
+    // Adds one alarm and removes it again, keeping the set at its size
+    @Benchmark
+    public AlarmRecord scheduleAndCancel() {
+        int i = cursor++;
+        engine.schedule(new AlarmRecord(alarms + 1, times[i & (TIMES - 1)], "Extra", "Body", "red",
+            "alarm_sound", 5, RecurrenceRule.ONCE));
+        return engine.cancel(alarms + 1);
+    }
+
+    @Benchmark
+    public long nextDue() {
+        return engine.nextDueTime();
+    }
+
+    // The queue fire path: take the earliest alarm and put it back later, keeping the set at its size
+    @Benchmark
+    public int pollAndRequeue() {
+        long due = engine.nextDueTime();
+        List<AlarmRecord> fired = engine.pollDue(due);
+        int i = cursor++;
+        for (AlarmRecord record : fired) {
+            engine.schedule(record.withScheduledTime(due + times[i & (TIMES - 1)] - START + 1));
+        }
+        return fired.size();
+    }
+
+    @Benchmark
+    public long nextOccurrence() {
+        int i = cursor++;
+        return weekdays.next(START, times[i & (TIMES - 1)], zone);
+    }
+}
@@ -0,0 +1,18 @@
+package com.planme.alarms.core;
+
+// The platform timer AlarmEngine drives; AlarmManager on the device.
+// Per-alarm mode registers each alarm on its own, next-alarm mode keeps a single queue registration.
+public interface AlarmBackend {
+    // Whether exact delivery is currently permitted
+    boolean canScheduleExact();
+
+    // Registers or replaces the alarm's own timer with the given AlarmRecord.DELIVERY_* class
+    void register(AlarmRecord record, int deliveryClass);
+
+    void unregister(int alarmId);
+
+    // Registers or moves the single queue timer
+    void armQueue(long time);
+
+    void disarmQueue();
+}
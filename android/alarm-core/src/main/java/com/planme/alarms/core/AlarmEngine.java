@@ -0,0 +1,449 @@
+package com.planme.alarms.core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Platform-independent scheduling: keeps the AlarmRegistry and the AlarmBackend's timers in step.
+// In per-alarm mode every alarm has its own timer. In next-alarm (queue) mode pending alarms sit in
+// an AlarmQueue and only the earliest one is registered, so the platform-side cost stays at one
+// timer however many alarms are stored.
+public class AlarmEngine {
+    // Alarms this close to the deadline are treated as due when the queue fires
+    private static final long DUE_SLACK_MS = 1000L;
+
+    // Alarms that expired while the device was off are reported as missed within this window
+    public static final long MISSED_GRACE_MS = 60L * 60 * 1000;
+
+    private final AlarmRegistry registry;
+    private final AlarmBackend backend;
+    private final IdAllocator ids = new IdAllocator();
+    private boolean queueMode;
+    // Alarms due within this long of a firing alarm ring with it in one wakeup; 0 disables coalescing
+    private long coalesceWindowMs;
+    private AlarmQueue queue;
+    private long armedTime = Long.MIN_VALUE;
+
+    public static class SyncResult {
+        public int added;
+        public int removed;
+        public int changed;
+        public int unchanged;
+        // Alarms that were added or changed, which the caller may need to prepare (e.g. their sounds)
+        public final List<AlarmRecord> written = new ArrayList<>();
+    }
+
+    public static class ReanchorResult {
+        public int checked;
+        public int changed;
+    }
+
+    public static class RestoreResult {
+        public int restored;
+        public int dropped;
+        public final List<AlarmRecord> missed = new ArrayList<>();
+    }
+
+    public AlarmEngine(AlarmRegistry registry, AlarmBackend backend, boolean queueMode, long coalesceWindowMs) {
+        this.registry = registry;
+        this.backend = backend;
+        this.queueMode = queueMode;
+        this.coalesceWindowMs = coalesceWindowMs;
+    }
+
+    public synchronized boolean isQueueMode() {
+        return queueMode;
+    }
+
+    public synchronized long getCoalesceWindowMs() {
+        return coalesceWindowMs;
+    }
+
+    public synchronized void setCoalesceWindowMs(long windowMs) {
+        if (windowMs < 0) {
+            throw new IllegalArgumentException("Coalescing window must not be negative: " + windowMs);
+        }
+        coalesceWindowMs = windowMs;
+    }
+
+    // An id no stored alarm uses, for alarms scheduled without one
+    public synchronized int allocateId() {
+        return ids.allocate(id -> registry.get(id) != null);
+    }
+
+    // Delivery class the alarm actually gets: the single queue registration serves every alarm and
+    // stays exact, and exact alarms fall back to a delivery window when exact alarms are not allowed
+    public synchronized int deliveryOf(AlarmRecord record) {
+        if (queueMode) {
+            return AlarmRecord.DELIVERY_EXACT;
+        }
+        if (record.deliveryClass == AlarmRecord.DELIVERY_EXACT && !backend.canScheduleExact()) {
+            return AlarmRecord.DELIVERY_WINDOWED;
+        }
+        return record.deliveryClass;
+    }
+
+    public synchronized void schedule(AlarmRecord record) {
+        AlarmRecord previous = registry.get(record.alarmId);
+        registry.put(record);
+        if (queueMode) {
+            queue().add(record.alarmId, record.scheduledTime);
+            armNext();
+        } else if (!sameRegistration(previous, record)) {
+            register(record);
+        }
+    }
+
+    public synchronized void scheduleAll(Collection<AlarmRecord> records) {
+        registry.putAll(records);
+        if (queueMode) {
+            AlarmQueue q = queue();
+            for (AlarmRecord record : records) {
+                q.add(record.alarmId, record.scheduledTime);
+            }
+            armNext();
+        } else {
+            for (AlarmRecord record : records) {
+                register(record);
+            }
+        }
+    }
+
+    public synchronized AlarmRecord cancel(int alarmId) {
+        AlarmRecord removed = registry.remove(alarmId);
+        if (queueMode) {
+            if (queue().remove(alarmId)) {
+                armNext();
+            }
+        } else {
+            backend.unregister(alarmId);
+        }
+        return removed;
+    }
+
+    public synchronized List<AlarmRecord> cancelAll() {
+        List<AlarmRecord> removed = registry.clear();
+        if (queueMode) {
+            queue().clear();
+            armNext();
+        } else {
+            for (AlarmRecord record : removed) {
+                backend.unregister(record.alarmId);
+            }
+        }
+        return removed;
+    }
+
+    // Earliest pending fire time, or Long.MAX_VALUE when nothing is scheduled
+    public synchronized long nextDueTime() {
+        if (queueMode) {
+            AlarmQueue q = queue();
+            return q.isEmpty() ? Long.MAX_VALUE : q.peekTime();
+        }
+        long next = Long.MAX_VALUE;
+        for (AlarmRecord record : registry.getAll()) {
+            next = Math.min(next, record.scheduledTime);
+        }
+        return next;
+    }
+
+    // Called when the queue registration fires: removes and returns every alarm that is due, or
+    // due within the coalescing window, then re-arms the registration for the next pending one
+    public synchronized List<AlarmRecord> pollDue(long now) {
+        List<AlarmRecord> due = new ArrayList<>();
+        if (!queueMode) {
+            return due;
+        }
+        AlarmQueue q = queue();
+        // The registration that brought us here has been consumed by the platform
+        armedTime = Long.MIN_VALUE;
+        long horizon = now + Math.max(DUE_SLACK_MS, coalesceWindowMs);
+        while (!q.isEmpty() && q.peekTime() <= horizon) {
+            AlarmRecord record = registry.get(q.poll());
+            if (record != null) {
+                due.add(record);
+            }
+        }
+        armNext();
+        return due;
+    }
+
+    // Per-alarm mode counterpart of the queue's window: when an alarm fires, takes the other alarms
+    // due within the coalescing window off the backend so they ring in the same session instead of
+    // waking the device again. Returned oldest first; the caller advances them like the fired alarm.
+    // Read from the registry's time index, so the cost follows the alarms in the window, not the
+    // registry size. Alarms already overdue are taken too; they would otherwise ring right after.
+    public synchronized List<AlarmRecord> takeCoalesced(int firedId, long now) {
+        List<AlarmRecord> coalesced = new ArrayList<>();
+        if (queueMode || coalesceWindowMs <= 0) {
+            return coalesced;
+        }
+        for (AlarmRecord record : registry.range(Long.MIN_VALUE, now + coalesceWindowMs)) {
+            if (record.alarmId != firedId) {
+                backend.unregister(record.alarmId);
+                coalesced.add(record);
+            }
+        }
+        return coalesced;
+    }
+
+    // Called once an alarm has fired: one-shots leave the registry and repeating alarms are re-armed
+    // for their next occurrence. Returns the re-armed record, or null when nothing is left to ring.
+    public synchronized AlarmRecord advance(int alarmId, long firedTime, long now) {
+        AlarmRecord record = registry.get(alarmId);
+        if (record == null || record.scheduledTime > firedTime) {
+            // Cancelled, or already moved on (e.g. a snooze of an earlier occurrence)
+            return null;
+        }
+        long next = record.recurrence.next(record.scheduledTime, Math.max(now, record.scheduledTime), ZoneId.systemDefault());
+        if (next < 0) {
+            registry.remove(alarmId);
+            if (queueMode && queue().remove(alarmId)) {
+                armNext();
+            }
+            return null;
+        }
+        AlarmRecord rearmed = record.withScheduledTime(next);
+        registry.put(rearmed);
+        if (queueMode) {
+            queue().add(alarmId, next);
+            armNext();
+        } else {
+            register(rearmed);
+        }
+        return rearmed;
+    }
+
+    // Makes the registry match 'desired' exactly, touching only alarms whose content hash differs.
+    // A sync that changes nothing makes no backend calls and no registry writes. Two desired alarms
+    // with the same id reject the whole sync, since only one of them could be kept.
+    public synchronized SyncResult sync(Collection<AlarmRecord> desired, long now) {
+        SyncResult result = new SyncResult();
+        ZoneId zone = ZoneId.systemDefault();
+        Set<Integer> keep = new HashSet<>();
+        Map<Integer, AlarmRecord> previous = new HashMap<>();
+        for (AlarmRecord record : desired) {
+            if (record.isRepeating() && record.scheduledTime <= now) {
+                // The registry holds repeating alarms at their upcoming occurrence, not their first one
+                record = record.withScheduledTime(record.recurrence.next(record.scheduledTime, now, zone));
+            }
+            if (!keep.add(record.alarmId)) {
+                throw new IllegalArgumentException("Duplicate alarm id in sync: " + record.alarmId);
+            }
+            AlarmRecord existing = registry.get(record.alarmId);
+            if (existing == null) {
+                result.added++;
+                result.written.add(record);
+            } else if (existing.contentHash() != record.contentHash()) {
+                result.changed++;
+                result.written.add(record);
+                previous.put(record.alarmId, existing);
+            } else {
+                result.unchanged++;
+            }
+        }
+        List<Integer> removals = new ArrayList<>();
+        for (AlarmRecord record : registry.getAll()) {
+            if (!keep.contains(record.alarmId)) {
+                removals.add(record.alarmId);
+            }
+        }
+        result.removed = removals.size();
+        if (result.written.isEmpty() && removals.isEmpty()) {
+            return result;
+        }
+
+        registry.removeAll(removals);
+        registry.putAll(result.written);
+        if (queueMode) {
+            AlarmQueue q = queue();
+            for (Integer alarmId : removals) {
+                q.remove(alarmId);
+            }
+            for (AlarmRecord record : result.written) {
+                q.add(record.alarmId, record.scheduledTime);
+            }
+            armNext();
+        } else {
+            for (Integer alarmId : removals) {
+                backend.unregister(alarmId);
+            }
+            for (AlarmRecord record : result.written) {
+                if (!sameRegistration(previous.get(record.alarmId), record)) {
+                    register(record);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Re-registers the persisted alarm set after the platform timers were lost (reboot, app update).
+    // Expired one-shots leave the registry (recent ones come back as missed) and expired repeating
+    // alarms move forward to their next occurrence.
+    public synchronized RestoreResult restore(long now) {
+        RestoreResult result = new RestoreResult();
+        ZoneId zone = ZoneId.systemDefault();
+        List<AlarmRecord> live = new ArrayList<>();
+        List<AlarmRecord> advanced = new ArrayList<>();
+        List<Integer> expired = new ArrayList<>();
+        for (AlarmRecord record : registry.getAll()) {
+            if (record.scheduledTime > now) {
+                live.add(record);
+                continue;
+            }
+            boolean missed = now - record.scheduledTime <= MISSED_GRACE_MS;
+            if (missed) {
+                result.missed.add(record);
+            }
+            if (record.isRepeating()) {
+                AlarmRecord next = record.withScheduledTime(record.recurrence.next(record.scheduledTime, now, zone));
+                advanced.add(next);
+                live.add(next);
+            } else {
+                expired.add(record.alarmId);
+                if (!missed) {
+                    result.dropped++;
+                }
+            }
+        }
+        registry.removeAll(expired);
+        registry.putAll(advanced);
+
+        if (queueMode) {
+            queue = null;
+            armedTime = Long.MIN_VALUE;
+            armNext();
+        } else {
+            for (AlarmRecord record : live) {
+                register(record);
+            }
+        }
+        result.restored = live.size();
+        return result;
+    }
+
+    // Called after the wall clock was set or the zone changed from 'from' to 'to'. Alarms keep their
+    // local wall-clock time in the new zone, and repeating calendar alarms move to their first
+    // occurrence after 'now' when the clock went back past earlier ones. Interval alarms count
+    // elapsed time and stay put. One pass over the registry; only alarms whose time moved are
+    // written and re-registered.
+    public synchronized ReanchorResult reanchor(ZoneId from, ZoneId to, long now) {
+        ReanchorResult result = new ReanchorResult();
+        boolean zoneChanged = !from.equals(to);
+        List<AlarmRecord> moved = new ArrayList<>();
+        for (AlarmRecord record : registry.getAll()) {
+            result.checked++;
+            long time = anchoredTime(record, from, to, zoneChanged, now);
+            if (time != record.scheduledTime) {
+                moved.add(record.withScheduledTime(time));
+            }
+        }
+        result.changed = moved.size();
+        if (moved.isEmpty()) {
+            return result;
+        }
+
+        registry.putAll(moved);
+        if (queueMode) {
+            AlarmQueue q = queue();
+            for (AlarmRecord record : moved) {
+                q.add(record.alarmId, record.scheduledTime);
+            }
+            armNext();
+        } else {
+            for (AlarmRecord record : moved) {
+                register(record);
+            }
+        }
+        return result;
+    }
+
+    // Switches between per-alarm and queue mode and moves the existing registrations across.
+    // Returns the number of alarms moved, or -1 when already in that mode.
+    public synchronized int setQueueMode(boolean enabled) {
+        if (enabled == queueMode) {
+            return -1;
+        }
+        List<AlarmRecord> records = registry.getAll();
+        if (enabled) {
+            for (AlarmRecord record : records) {
+                backend.unregister(record.alarmId);
+            }
+            queueMode = true;
+            queue = null;
+            armNext();
+        } else {
+            queue = null;
+            disarm();
+            queueMode = false;
+            for (AlarmRecord record : records) {
+                register(record);
+            }
+        }
+        return records.size();
+    }
+
+    private static long anchoredTime(AlarmRecord record, ZoneId from, ZoneId to, boolean zoneChanged, long now) {
+        RecurrenceRule rule = record.recurrence;
+        if (rule.type == RecurrenceRule.INTERVAL) {
+            return record.scheduledTime;
+        }
+        long time = record.scheduledTime;
+        if (zoneChanged) {
+            time = Instant.ofEpochMilli(time).atZone(from).toLocalDateTime().atZone(to).toInstant().toEpochMilli();
+        }
+        // An occurrence already due is left to fire, as the platform fires an RTC alarm the clock jumped past
+        if (rule.isRepeating() && time > now) {
+            time = rule.next(time, now, to);
+        }
+        return time;
+    }
+
+    // Built lazily from the registry, so a cold process started by the queue timer can rebuild it
+    private AlarmQueue queue() {
+        if (queue == null) {
+            List<AlarmRecord> records = registry.getAll();
+            queue = new AlarmQueue(records.size() + 16);
+            for (AlarmRecord record : records) {
+                queue.add(record.alarmId, record.scheduledTime);
+            }
+        }
+        return queue;
+    }
+
+    private void armNext() {
+        AlarmQueue q = queue();
+        if (q.isEmpty()) {
+            disarm();
+            return;
+        }
+        long next = q.peekTime();
+        if (next == armedTime) {
+            return;
+        }
+        backend.armQueue(next);
+        armedTime = next;
+    }
+
+    private void disarm() {
+        backend.disarmQueue();
+        armedTime = Long.MIN_VALUE;
+    }
+
+    // Platform registrations carry only the alarm id and time, so an alarm whose title, sound or
+    // other details changed keeps its existing registration
+    private boolean sameRegistration(AlarmRecord previous, AlarmRecord record) {
+        return previous != null && previous.scheduledTime == record.scheduledTime
+            && deliveryOf(previous) == deliveryOf(record);
+    }
+
+    private void register(AlarmRecord record) {
+        backend.register(record, deliveryOf(record));
+    }
+}
@@ -0,0 +1,146 @@
+package com.planme.alarms.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Indexed binary min-heap of (fire time, alarm id) ordered by fire time, then id.
+// The id -> heap slot index makes update and remove O(log n) instead of a linear search.
+public class AlarmQueue {
+    private long[] times;
+    private int[] ids;
+    private int size;
+    private final Map<Integer, Integer> slots = new HashMap<>();
+
+    public AlarmQueue() {
+        this(16);
+    }
+
+    public AlarmQueue(int capacity) {
+        times = new long[Math.max(capacity, 1)];
+        ids = new int[Math.max(capacity, 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int alarmId) {
+        return slots.containsKey(alarmId);
+    }
+
+    public int peekId() {
+        if (size == 0) {
+            throw new IllegalStateException("queue is empty");
+        }
+        return ids[0];
+    }
+
+    public long peekTime() {
+        if (size == 0) {
+            throw new IllegalStateException("queue is empty");
+        }
+        return times[0];
+    }
+
+    // Inserts the alarm, or moves it if it is already queued
+    public void add(int alarmId, long time) {
+        Integer slot = slots.get(alarmId);
+        if (slot != null) {
+            long old = times[slot];
+            times[slot] = time;
+            if (time < old) {
+                siftUp(slot);
+            } else {
+                siftDown(slot);
+            }
+            return;
+        }
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        times[size] = time;
+        ids[size] = alarmId;
+        slots.put(alarmId, size);
+        size++;
+        siftUp(size - 1);
+    }
+
+    public boolean remove(int alarmId) {
+        Integer slot = slots.remove(alarmId);
+        if (slot == null) {
+            return false;
+        }
+        int last = --size;
+        if (slot != last) {
+            times[slot] = times[last];
+            ids[slot] = ids[last];
+            slots.put(ids[slot], slot);
+            siftDown(slot);
+            siftUp(slot);
+        }
+        return true;
+    }
+
+    public int poll() {
+        int alarmId = peekId();
+        remove(alarmId);
+        return alarmId;
+    }
+
+    public void clear() {
+        size = 0;
+        slots.clear();
+    }
+
+    private boolean less(int a, int b) {
+        return times[a] < times[b] || (times[a] == times[b] && ids[a] < ids[b]);
+    }
+
+    private void swap(int a, int b) {
+        long t = times[a];
+        times[a] = times[b];
+        times[b] = t;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        slots.put(ids[a], a);
+        slots.put(ids[b], b);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && less(right, left)) {
+                smallest = right;
+            }
+            if (!less(smallest, i)) {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.planme.alarms.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.Comparator;
+
+// One scheduled alarm as held by an AlarmRegistry
+public class AlarmRecord {
+    // How hard AlarmManager is asked to hit the scheduled time: exact wake-ups, a delivery window
+    // the system may batch within, or inexact delivery for background nudges
+    public static final int DELIVERY_EXACT = 0;
+    public static final int DELIVERY_WINDOWED = 1;
+    public static final int DELIVERY_INEXACT = 2;
+    public static final String[] DELIVERY_NAMES = {"exact", "windowed", "inexact"};
+
+    // Order of the registries' time indexes: by fire time, then id
+    public static final Comparator<AlarmRecord> BY_TIME = (a, b) -> a.scheduledTime != b.scheduledTime
+        ? Long.compare(a.scheduledTime, b.scheduledTime) : Integer.compare(a.alarmId, b.alarmId);
+
+    public final int alarmId;
+    public final long scheduledTime;
+    public final String title;
+    public final String body;
+    public final String color;
+    public final String sound;
+    public final int snoozeMinutes;
+    public final RecurrenceRule recurrence;
+    public final int deliveryClass;
+    // Lazily computed; 0 means not computed yet
+    private long contentHash;
+
+    public AlarmRecord(int alarmId, long scheduledTime, String title, String body,
+                       String color, String sound, int snoozeMinutes, RecurrenceRule recurrence) {
+        this(alarmId, scheduledTime, title, body, color, sound, snoozeMinutes, recurrence, DELIVERY_EXACT);
+    }
+
+    public AlarmRecord(int alarmId, long scheduledTime, String title, String body, String color,
+                       String sound, int snoozeMinutes, RecurrenceRule recurrence, int deliveryClass) {
+        this.alarmId = alarmId;
+        this.scheduledTime = scheduledTime;
+        this.title = title;
+        this.body = body;
+        this.color = color;
+        this.sound = sound;
+        this.snoozeMinutes = snoozeMinutes;
+        this.recurrence = recurrence;
+        this.deliveryClass = deliveryClass;
+    }
+
+    public AlarmRecord withScheduledTime(long time) {
+        return new AlarmRecord(alarmId, time, title, body, color, sound, snoozeMinutes, recurrence, deliveryClass);
+    }
+
+    public boolean isRepeating() {
+        return recurrence.isRepeating();
+    }
+
+    // 64-bit FNV-1a over the persisted form, so any field that would change what is stored changes
+    // the hash. syncAlarms compares these instead of the records field by field.
+    public long contentHash() {
+        long hash = contentHash;
+        if (hash == 0L) {
+            FnvOutputStream fnv = new FnvOutputStream();
+            try {
+                writeTo(new DataOutputStream(fnv));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            hash = fnv.hash == 0L ? 1L : fnv.hash;
+            contentHash = hash;
+        }
+        return hash;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(alarmId);
+        out.writeLong(scheduledTime);
+        out.writeUTF(title);
+        out.writeUTF(body);
+        out.writeUTF(color);
+        out.writeUTF(sound);
+        out.writeInt(snoozeMinutes);
+        recurrence.writeTo(out);
+        out.writeByte(deliveryClass);
+    }
+
+    // Version 1 records carried a repeatDaily flag where version 2 has a full recurrence rule;
+    // records before version 3 have no delivery class and were all exact
+    public static AlarmRecord readFrom(DataInput in, int version) throws IOException {
+        int alarmId = in.readInt();
+        long scheduledTime = in.readLong();
+        String title = in.readUTF();
+        String body = in.readUTF();
+        String color = in.readUTF();
+        String sound = in.readUTF();
+        int snoozeMinutes = in.readInt();
+        RecurrenceRule recurrence;
+        if (version == 1) {
+            recurrence = in.readBoolean() ? RecurrenceRule.daily(scheduledTime, ZoneId.systemDefault()) : RecurrenceRule.ONCE;
+        } else {
+            recurrence = RecurrenceRule.readFrom(in);
+        }
+        int deliveryClass = version >= 3 ? in.readByte() : DELIVERY_EXACT;
+        return new AlarmRecord(alarmId, scheduledTime, title, body, color, sound, snoozeMinutes, recurrence,
+            deliveryClass);
+    }
+
+    private static final class FnvOutputStream extends OutputStream {
+        long hash = 0xcbf29ce484222325L;
+
+        @Override
+        public void write(int b) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.planme.alarms.core;
+
+import java.util.Collection;
+import java.util.List;
+
+// Where AlarmEngine keeps the alarm set: persisted on the device, in memory on a plain JVM
+public interface AlarmRegistry {
+    AlarmRecord get(int alarmId);
+
+    List<AlarmRecord> getAll();
+
+    // Alarms with from <= scheduledTime <= to, in time order, from the registry's time index
+    List<AlarmRecord> range(long from, long to);
+
+    int size();
+
+    void put(AlarmRecord record);
+
+    void putAll(Collection<AlarmRecord> records);
+
+    AlarmRecord remove(int alarmId);
+
+    void removeAll(Collection<Integer> alarmIds);
+
+    // Removes every alarm and returns what was there
+    List<AlarmRecord> clear();
+}
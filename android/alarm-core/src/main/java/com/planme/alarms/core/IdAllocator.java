@@ -0,0 +1,27 @@
+package com.planme.alarms.core;
+
+import java.util.function.IntPredicate;
+
+// Hands out ids for alarms scheduled without one. Native ids come from the upper half of the id
+// space so they do not collide with the ids the web layer assigns, which it keeps below FIRST_ID
+// (sequential ids, and the ids syncAlarms derives from the app's alarm ids). Every request
+// code and notification id is the alarm id itself (snoozes are told apart by their action), so the
+// whole upper half up to Integer.MAX_VALUE is usable.
+public final class IdAllocator {
+    public static final int FIRST_ID = 1 << 30;
+    public static final int LAST_ID = Integer.MAX_VALUE;
+
+    private int next = FIRST_ID;
+
+    // Next id after the previous allocation that 'inUse' rejects, wrapping around at LAST_ID
+    public synchronized int allocate(IntPredicate inUse) {
+        for (long tried = 0; tried <= (long) LAST_ID - FIRST_ID; tried++) {
+            int id = next;
+            next = id == LAST_ID ? FIRST_ID : id + 1;
+            if (!inUse.test(id)) {
+                return id;
+            }
+        }
+        throw new IllegalStateException("No free alarm ids");
+    }
+}
@@ -0,0 +1,86 @@
+package com.planme.alarms.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Unpersisted AlarmRegistry for tests and benchmarks, indexed by time like AlarmStore
+public final class MemoryAlarmRegistry implements AlarmRegistry {
+    private final Map<Integer, AlarmRecord> alarms = new HashMap<>();
+    private final TreeSet<AlarmRecord> byTime = new TreeSet<>(AlarmRecord.BY_TIME);
+
+    @Override
+    public AlarmRecord get(int alarmId) {
+        return alarms.get(alarmId);
+    }
+
+    @Override
+    public List<AlarmRecord> getAll() {
+        return new ArrayList<>(alarms.values());
+    }
+
+    @Override
+    public List<AlarmRecord> range(long from, long to) {
+        if (from > to) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(byTime.subSet(probe(from, Integer.MIN_VALUE), true, probe(to, Integer.MAX_VALUE), true));
+    }
+
+    @Override
+    public int size() {
+        return alarms.size();
+    }
+
+    @Override
+    public void put(AlarmRecord record) {
+        index(record);
+    }
+
+    @Override
+    public void putAll(Collection<AlarmRecord> records) {
+        for (AlarmRecord record : records) {
+            index(record);
+        }
+    }
+
+    @Override
+    public AlarmRecord remove(int alarmId) {
+        AlarmRecord removed = alarms.remove(alarmId);
+        if (removed != null) {
+            byTime.remove(removed);
+        }
+        return removed;
+    }
+
+    @Override
+    public void removeAll(Collection<Integer> alarmIds) {
+        for (Integer alarmId : alarmIds) {
+            remove(alarmId);
+        }
+    }
+
+    @Override
+    public List<AlarmRecord> clear() {
+        List<AlarmRecord> removed = new ArrayList<>(alarms.values());
+        alarms.clear();
+        byTime.clear();
+        return removed;
+    }
+
+    private void index(AlarmRecord record) {
+        AlarmRecord previous = alarms.put(record.alarmId, record);
+        if (previous != null) {
+            byTime.remove(previous);
+        }
+        byTime.add(record);
+    }
+
+    // Search key for the time index; only the time and id are compared
+    private static AlarmRecord probe(long time, int alarmId) {
+        return new AlarmRecord(alarmId, time, null, null, null, null, 0, RecurrenceRule.ONCE);
+    }
+}
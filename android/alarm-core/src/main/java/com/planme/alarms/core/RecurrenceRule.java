@@ -0,0 +1,155 @@
+package com.planme.alarms.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+// How an alarm repeats after it fires. Next occurrences are computed directly from the rule with
+// java.time arithmetic in the device's zone, so a daily alarm keeps its wall-clock time across DST
+// changes and nothing is iterated day by day. Exclusion dates skip whole local days.
+public final class RecurrenceRule {
+    public static final int NONE = 0;
+    public static final int DAILY = 1;
+    public static final int WEEKLY = 2;
+    public static final int INTERVAL = 3;
+    public static final int MONTHLY = 4;
+    public static final String[] TYPE_NAMES = {"none", "daily", "weekly", "interval", "monthly"};
+
+    public static final RecurrenceRule ONCE = new RecurrenceRule(NONE, 0, 0, 0, 0, new long[0]);
+
+    private static final long MINUTE_MS = 60_000L;
+
+    public final int type;
+    // Local time of day the alarm rings at, for the calendar-based rules
+    public final int secondOfDay;
+    // Bit 0 is Monday through bit 6 Sunday
+    public final int weekdays;
+    public final int intervalMinutes;
+    public final int dayOfMonth;
+    // Sorted epoch days that never ring
+    private final long[] exclusions;
+
+    public RecurrenceRule(int type, int secondOfDay, int weekdays, int intervalMinutes, int dayOfMonth, long[] exclusions) {
+        this.type = type;
+        this.secondOfDay = secondOfDay;
+        this.weekdays = weekdays;
+        this.intervalMinutes = intervalMinutes;
+        this.dayOfMonth = dayOfMonth;
+        this.exclusions = exclusions;
+    }
+
+    public boolean isRepeating() {
+        return type != NONE;
+    }
+
+    public static RecurrenceRule daily(long firstTime, ZoneId zone) {
+        ZonedDateTime first = Instant.ofEpochMilli(firstTime).atZone(zone);
+        return new RecurrenceRule(DAILY, first.toLocalTime().toSecondOfDay(), 0, 0, 0, new long[0]);
+    }
+
+    // Sorted epoch days that never ring
+    public long[] exclusions() {
+        return exclusions.clone();
+    }
+
+    // First occurrence strictly after 'after', or -1 when the alarm does not repeat.
+    // 'current' is an existing occurrence, which fixes the phase of interval rules.
+    public long next(long current, long after, ZoneId zone) {
+        if (type == NONE) {
+            return -1L;
+        }
+        if (type == INTERVAL) {
+            long step = intervalMinutes * MINUTE_MS;
+            long next = after < current ? current : current + ((after - current) / step + 1) * step;
+            // Each pass moves past one excluded day, so this runs at most exclusions + 1 times
+            for (int i = 0; i <= exclusions.length; i++) {
+                LocalDate day = Instant.ofEpochMilli(next).atZone(zone).toLocalDate();
+                if (!isExcluded(day)) {
+                    return next;
+                }
+                long dayStart = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                next = current + ((dayStart - 1 - current) / step + 1) * step;
+            }
+            return next;
+        }
+
+        LocalTime time = LocalTime.ofSecondOfDay(secondOfDay);
+        ZonedDateTime start = Instant.ofEpochMilli(after).atZone(zone);
+        LocalDate day = start.toLocalDate();
+        if (!ZonedDateTime.of(day, time, zone).isAfter(start)) {
+            day = day.plusDays(1);
+        }
+        day = firstMatchOnOrAfter(day);
+        for (int i = 0; i < exclusions.length && isExcluded(day); i++) {
+            day = firstMatchOnOrAfter(day.plusDays(1));
+        }
+        return ZonedDateTime.of(day, time, zone).toInstant().toEpochMilli();
+    }
+
+    // Earliest day on or after 'day' that the rule rings on, ignoring exclusions
+    private LocalDate firstMatchOnOrAfter(LocalDate day) {
+        switch (type) {
+            case WEEKLY: {
+                int dow = day.getDayOfWeek().getValue() - 1;
+                // Rotate the mask so bit 0 is 'day', then the lowest set bit is the distance to it
+                int rotated = ((weekdays >>> dow) | (weekdays << (7 - dow))) & 0x7F;
+                return day.plusDays(Integer.numberOfTrailingZeros(rotated));
+            }
+            case MONTHLY: {
+                LocalDate candidate = clampToMonth(day.withDayOfMonth(1));
+                if (candidate.isBefore(day)) {
+                    candidate = clampToMonth(day.withDayOfMonth(1).plusMonths(1));
+                }
+                return candidate;
+            }
+            default:
+                return day;
+        }
+    }
+
+    // dayOfMonth in the month of 'firstOfMonth', or its last day for short months
+    private LocalDate clampToMonth(LocalDate firstOfMonth) {
+        return firstOfMonth.withDayOfMonth(Math.min(dayOfMonth, firstOfMonth.lengthOfMonth()));
+    }
+
+    private boolean isExcluded(LocalDate day) {
+        return exclusions.length > 0 && Arrays.binarySearch(exclusions, day.toEpochDay()) >= 0;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type);
+        if (type == NONE) {
+            return;
+        }
+        out.writeInt(secondOfDay);
+        out.writeByte(weekdays);
+        out.writeInt(intervalMinutes);
+        out.writeByte(dayOfMonth);
+        out.writeInt(exclusions.length);
+        for (long day : exclusions) {
+            out.writeLong(day);
+        }
+    }
+
+    public static RecurrenceRule readFrom(DataInput in) throws IOException {
+        int type = in.readByte();
+        if (type == NONE) {
+            return ONCE;
+        }
+        int secondOfDay = in.readInt();
+        int weekdays = in.readByte();
+        int intervalMinutes = in.readInt();
+        int dayOfMonth = in.readByte();
+        long[] exclusions = new long[in.readInt()];
+        for (int i = 0; i < exclusions.length; i++) {
+            exclusions[i] = in.readLong();
+        }
+        return new RecurrenceRule(type, secondOfDay, weekdays, intervalMinutes, dayOfMonth, exclusions);
+    }
+}
@@ -0,0 +1,209 @@
+package com.planme.alarms.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AlarmEngineTest {
+
+    // Records what the engine asks of the platform
+    private static final class RecordingBackend implements AlarmBackend {
+        final List<Integer> registered = new ArrayList<>();
+        final List<Integer> unregistered = new ArrayList<>();
+        long armedAt = -1L;
+        int calls;
+
+        @Override
+        public boolean canScheduleExact() {
+            return true;
+        }
+
+        @Override
+        public void register(AlarmRecord record, int deliveryClass) {
+            registered.add(record.alarmId);
+            calls++;
+        }
+
+        @Override
+        public void unregister(int alarmId) {
+            unregistered.add(alarmId);
+            calls++;
+        }
+
+        @Override
+        public void armQueue(long time) {
+            armedAt = time;
+            calls++;
+        }
+
+        @Override
+        public void disarmQueue() {
+            armedAt = -1L;
+            calls++;
+        }
+    }
+
+    private static AlarmRecord alarm(int alarmId, long time) {
+        return new AlarmRecord(alarmId, time, "Alarm " + alarmId, "Body", "red", "alarm_sound", 5, RecurrenceRule.ONCE);
+    }
+
+    @Test
+    public void queueModeArmsOnlyTheEarliestAlarm() {
+        RecordingBackend backend = new RecordingBackend();
+        AlarmEngine engine = new AlarmEngine(new MemoryAlarmRegistry(), backend, true, 0L);
+        engine.scheduleAll(Arrays.asList(alarm(1, 3000L), alarm(2, 1000L), alarm(3, 2000L)));
+
+        assertEquals(1000L, backend.armedAt);
+        assertTrue(backend.registered.isEmpty());
+        engine.cancel(2);
+        assertEquals(2000L, backend.armedAt);
+        assertEquals(2000L, engine.nextDueTime());
+    }
+
+    @Test
+    public void pollDueTakesAlarmsInsideTheCoalescingWindow() {
+        RecordingBackend backend = new RecordingBackend();
+        AlarmEngine engine = new AlarmEngine(new MemoryAlarmRegistry(), backend, true, 30_000L);
+        engine.scheduleAll(Arrays.asList(alarm(1, 10_000L), alarm(2, 35_000L), alarm(3, 60_000L)));
+
+        List<AlarmRecord> due = engine.pollDue(10_000L);
+        assertEquals(2, due.size());
+        assertEquals(1, due.get(0).alarmId);
+        assertEquals(2, due.get(1).alarmId);
+        assertEquals(60_000L, backend.armedAt);
+    }
+
+    @Test
+    public void takeCoalescedReturnsTheWindowInTimeOrder() {
+        RecordingBackend backend = new RecordingBackend();
+        AlarmEngine engine = new AlarmEngine(new MemoryAlarmRegistry(), backend, false, 30_000L);
+        engine.scheduleAll(Arrays.asList(alarm(1, 10_000L), alarm(3, 35_000L), alarm(2, 20_000L), alarm(4, 60_000L)));
+
+        List<AlarmRecord> coalesced = engine.takeCoalesced(1, 10_000L);
+        assertEquals(2, coalesced.size());
+        assertEquals(2, coalesced.get(0).alarmId);
+        assertEquals(3, coalesced.get(1).alarmId);
+        assertEquals(Arrays.asList(2, 3), backend.unregistered);
+    }
+
+    @Test
+    public void advanceRemovesOneShotsAndRearmsRepeatingAlarms() {
+        MemoryAlarmRegistry registry = new MemoryAlarmRegistry();
+        AlarmEngine engine = new AlarmEngine(registry, new RecordingBackend(), false, 0L);
+        RecurrenceRule everyHour = new RecurrenceRule(RecurrenceRule.INTERVAL, 0, 0, 60, 0, new long[0]);
+        engine.schedule(alarm(1, 1000L));
+        engine.schedule(new AlarmRecord(2, 1000L, "Hourly", "Body", "red", "alarm_sound", 5, everyHour));
+
+        assertNull(engine.advance(1, 1000L, 1500L));
+        assertNull(registry.get(1));
+        AlarmRecord next = engine.advance(2, 1000L, 1500L);
+        assertEquals(1000L + 3_600_000L, next.scheduledTime);
+        assertEquals(next.scheduledTime, registry.get(2).scheduledTime);
+    }
+
+    @Test
+    public void unchangedSyncMakesNoBackendCalls() {
+        RecordingBackend backend = new RecordingBackend();
+        AlarmEngine engine = new AlarmEngine(new MemoryAlarmRegistry(), backend, false, 0L);
+        List<AlarmRecord> desired = Arrays.asList(alarm(1, 1000L), alarm(2, 2000L));
+        engine.scheduleAll(desired);
+        int callsBefore = backend.calls;
+
+        AlarmEngine.SyncResult result = engine.sync(Arrays.asList(alarm(1, 1000L), alarm(2, 2000L)), 0L);
+        assertEquals(2, result.unchanged);
+        assertEquals(callsBefore, backend.calls);
+
+        result = engine.sync(Arrays.asList(alarm(1, 1500L), alarm(3, 3000L)), 0L);
+        assertEquals(1, result.changed);
+        assertEquals(1, result.added);
+        assertEquals(1, result.removed);
+        assertTrue(backend.unregistered.contains(2));
+    }
+
+    @Test
+    public void duplicateIdsRejectTheSyncWithoutChanges() {
+        RecordingBackend backend = new RecordingBackend();
+        MemoryAlarmRegistry registry = new MemoryAlarmRegistry();
+        AlarmEngine engine = new AlarmEngine(registry, backend, false, 0L);
+        engine.schedule(alarm(1, 1000L));
+        int callsBefore = backend.calls;
+
+        try {
+            engine.sync(Arrays.asList(alarm(2, 2000L), alarm(2, 3000L)), 0L);
+            fail("Expected the duplicate id to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(callsBefore, backend.calls);
+        assertNotNull(registry.get(1));
+        assertNull(registry.get(2));
+    }
+
+    @Test
+    public void detailChangesKeepTheExistingRegistration() {
+        RecordingBackend backend = new RecordingBackend();
+        MemoryAlarmRegistry registry = new MemoryAlarmRegistry();
+        AlarmEngine engine = new AlarmEngine(registry, backend, false, 0L);
+        engine.schedule(alarm(1, 1000L));
+        engine.schedule(new AlarmRecord(1, 1000L, "Renamed", "Body", "red", "other_sound", 5, RecurrenceRule.ONCE));
+        assertEquals(1, backend.registered.size());
+        assertEquals("Renamed", registry.get(1).title);
+
+        AlarmEngine.SyncResult result = engine.sync(Arrays.asList(
+            new AlarmRecord(1, 1000L, "Renamed again", "Body", "red", "alarm_sound", 5, RecurrenceRule.ONCE)), 0L);
+        assertEquals(1, result.changed);
+        assertEquals(1, backend.registered.size());
+
+        engine.schedule(alarm(1, 2000L));
+        assertEquals(2, backend.registered.size());
+    }
+
+    @Test
+    public void reanchorKeepsWallClockTimesAndRegistersOnlyMovedAlarms() {
+        ZoneId berlin = ZoneId.of("Europe/Berlin");
+        ZoneId newYork = ZoneId.of("America/New_York");
+        long now = ZonedDateTime.of(2026, 3, 2, 6, 0, 0, 0, berlin).toInstant().toEpochMilli();
+        long sevenBerlin = ZonedDateTime.of(2026, 3, 2, 7, 0, 0, 0, berlin).toInstant().toEpochMilli();
+        RecurrenceRule everyHour = new RecurrenceRule(RecurrenceRule.INTERVAL, 0, 0, 60, 0, new long[0]);
+
+        RecordingBackend backend = new RecordingBackend();
+        MemoryAlarmRegistry registry = new MemoryAlarmRegistry();
+        AlarmEngine engine = new AlarmEngine(registry, backend, false, 0L);
+        engine.schedule(new AlarmRecord(1, sevenBerlin, "Daily", "Body", "red", "alarm_sound", 5,
+            RecurrenceRule.daily(sevenBerlin, berlin)));
+        engine.schedule(alarm(2, sevenBerlin));
+        engine.schedule(new AlarmRecord(3, sevenBerlin, "Hourly", "Body", "red", "alarm_sound", 5, everyHour));
+        backend.registered.clear();
+
+        AlarmEngine.ReanchorResult result = engine.reanchor(berlin, newYork, now);
+        assertEquals(3, result.checked);
+        assertEquals(2, result.changed);
+        long sevenNewYork = ZonedDateTime.of(2026, 3, 2, 7, 0, 0, 0, newYork).toInstant().toEpochMilli();
+        assertEquals(sevenNewYork, registry.get(1).scheduledTime);
+        assertEquals(sevenNewYork, registry.get(2).scheduledTime);
+        assertEquals(sevenBerlin, registry.get(3).scheduledTime);
+        assertEquals(Arrays.asList(1, 2), backend.registered);
+
+        // Nothing moves a second time
+        backend.registered.clear();
+        assertEquals(0, engine.reanchor(newYork, newYork, now).changed);
+        assertTrue(backend.registered.isEmpty());
+    }
+
+    @Test
+    public void allocatedIdsSkipIdsInUse() {
+        MemoryAlarmRegistry registry = new MemoryAlarmRegistry();
+        AlarmEngine engine = new AlarmEngine(registry, new RecordingBackend(), false, 0L);
+        registry.put(alarm(IdAllocator.FIRST_ID, 1000L));
+
+        int first = engine.allocateId();
+        int second = engine.allocateId();
+        assertEquals(IdAllocator.FIRST_ID + 1, first);
+        assertEquals(IdAllocator.FIRST_ID + 2, second);
+    }
+}
@@ -0,0 +1,55 @@
+package com.planme.alarms.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AlarmQueueTest {
+
+    @Test
+    public void pollsInFireTimeOrder() {
+        AlarmQueue queue = new AlarmQueue(2);
+        queue.add(1, 300L);
+        queue.add(2, 100L);
+        queue.add(3, 200L);
+        queue.add(4, 100L);
+
+        assertEquals(2, queue.poll());
+        assertEquals(4, queue.poll());
+        assertEquals(3, queue.poll());
+        assertEquals(1, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void addingAnExistingIdMovesIt() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(1, 100L);
+        queue.add(2, 200L);
+        queue.add(1, 300L);
+
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.peekId());
+        assertEquals(200L, queue.peekTime());
+    }
+
+    @Test
+    public void removeKeepsHeapOrder() {
+        AlarmQueue queue = new AlarmQueue();
+        for (int id = 1; id <= 100; id++) {
+            queue.add(id, (id * 37L) % 101);
+        }
+        for (int id = 1; id <= 100; id += 2) {
+            assertTrue(queue.remove(id));
+        }
+        assertFalse(queue.remove(1));
+
+        long last = Long.MIN_VALUE;
+        while (!queue.isEmpty()) {
+            long time = queue.peekTime();
+            assertTrue(time >= last);
+            assertEquals(0, queue.poll() % 2);
+            last = time;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.planme.alarms.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class AlarmRecordTest {
+
+    private static AlarmRecord record(String title, long time) {
+        return new AlarmRecord(7, time, title, "Body", "red", "alarm_sound", 5, RecurrenceRule.ONCE);
+    }
+
+    @Test
+    public void equalContentHashesEqually() {
+        assertEquals(record("Wake", 1000L).contentHash(), record("Wake", 1000L).contentHash());
+    }
+
+    @Test
+    public void anyStoredFieldChangesTheHash() {
+        long base = record("Wake", 1000L).contentHash();
+        assertNotEquals(base, record("Wake up", 1000L).contentHash());
+        assertNotEquals(base, record("Wake", 2000L).contentHash());
+        assertNotEquals(base, new AlarmRecord(7, 1000L, "Wake", "Body", "red", "alarm_sound", 5,
+            RecurrenceRule.ONCE, AlarmRecord.DELIVERY_INEXACT).contentHash());
+    }
+
+    @Test
+    public void roundTripKeepsDeliveryClassAndHash() throws IOException {
+        AlarmRecord original = new AlarmRecord(7, 1000L, "Wake", "Body", "red", "alarm_sound", 5,
+            RecurrenceRule.ONCE, AlarmRecord.DELIVERY_WINDOWED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        original.writeTo(new DataOutputStream(bytes));
+
+        AlarmRecord read = AlarmRecord.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 3);
+        assertEquals(AlarmRecord.DELIVERY_WINDOWED, read.deliveryClass);
+        assertEquals(original.contentHash(), read.contentHash());
+    }
+}
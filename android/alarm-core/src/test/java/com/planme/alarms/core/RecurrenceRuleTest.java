@@ -0,0 +1,72 @@
+package com.planme.alarms.core;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import org.junit.Test;
+
+public class RecurrenceRuleTest {
+    private static final ZoneId ZONE = ZoneId.of("America/New_York");
+    private static final int SEVEN_AM = 7 * 3600;
+
+    private static long at(String localDateTime) {
+        return LocalDateTime.parse(localDateTime).atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static long day(String date) {
+        return LocalDate.parse(date).toEpochDay();
+    }
+
+    @Test
+    public void dailyKeepsWallClockTimeAcrossDst() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.DAILY, SEVEN_AM, 0, 0, 0, new long[0]);
+        long fired = at("2026-03-07T07:00");
+
+        assertEquals(at("2026-03-08T07:00"), rule.next(fired, fired, ZONE));
+    }
+
+    @Test
+    public void weeklyJumpsToTheNextWeekdayInTheSet() {
+        // Monday, Wednesday, Friday
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.WEEKLY, SEVEN_AM, 0b10101, 0, 0, new long[0]);
+        long friday = at("2026-10-16T07:00");
+
+        assertEquals(at("2026-10-19T07:00"), rule.next(friday, friday, ZONE));
+        assertEquals(at("2026-10-16T07:00"), rule.next(friday, friday - 1, ZONE));
+    }
+
+    @Test
+    public void monthlyClampsToShortMonths() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.MONTHLY, SEVEN_AM, 0, 0, 31, new long[0]);
+        long january = at("2027-01-31T07:00");
+
+        long february = rule.next(january, january, ZONE);
+        assertEquals(at("2027-02-28T07:00"), february);
+        assertEquals(at("2027-03-31T07:00"), rule.next(february, february, ZONE));
+    }
+
+    @Test
+    public void exclusionsSkipWholeDays() {
+        long[] christmas = {day("2026-12-25")};
+        RecurrenceRule daily = new RecurrenceRule(RecurrenceRule.DAILY, SEVEN_AM, 0, 0, 0, christmas);
+        long eve = at("2026-12-24T07:00");
+        assertEquals(at("2026-12-26T07:00"), daily.next(eve, eve, ZONE));
+
+        // Every 90 minutes from 22:30 on the 24th resumes in phase on the 26th
+        RecurrenceRule interval = new RecurrenceRule(RecurrenceRule.INTERVAL, 0, 0, 90, 0, christmas);
+        long late = at("2026-12-24T22:30");
+        assertEquals(at("2026-12-26T00:00"), interval.next(late, late, ZONE));
+    }
+
+    @Test
+    public void intervalCatchesUpWithoutIterating() {
+        RecurrenceRule rule = new RecurrenceRule(RecurrenceRule.INTERVAL, 0, 0, 15, 0, new long[0]);
+        long first = at("2026-01-01T00:00");
+
+        assertEquals(at("2026-06-01T00:15"), rule.next(first, at("2026-06-01T00:05"), ZONE));
+        assertEquals(-1L, RecurrenceRule.ONCE.next(first, first, ZONE));
+    }
+}
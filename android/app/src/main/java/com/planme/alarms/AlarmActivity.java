@@ -2,32 +2,87 @@ package com.planme.alarms;
 
 import android.app.Activity;
 import android.app.KeyguardManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.media.RingtoneManager;
-import android.net.Uri;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
-import android.os.Vibrator;
+import android.os.SystemClock;
+import android.text.format.DateFormat;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
-public class AlarmActivity extends Activity {
-    private MediaPlayer mediaPlayer;
-    private Vibrator vibrator;
-    private PowerManager.WakeLock wakeLock;
-    private boolean isAlarmActive = true;
+import com.planme.alarms.core.AlarmRecord;
+
+import java.text.DateFormatSymbols;
+import java.util.List;
+import java.util.TimeZone;
+
+// Thin view over AlarmRingService, which owns the sound, vibration and wake lock. Recreating or
+// relaunching this activity only rebinds; it never restarts playback. When several alarms ring in
+// one session they are listed together, each with its own dismiss button.
+public class AlarmActivity extends Activity implements AlarmRingService.Listener {
     private int alarmId;
+    private long scheduledTime;
+    private AlarmRecord alarm;
+    private EventLog events;
+    private AlarmRingService ringService;
+    private PowerManager powerManager;
+    private TextView timeView;
+    private ClockFormatter clock;
+    private final Handler clockHandler = new Handler(Looper.getMainLooper());
+    private final Runnable clockTick = this::tick;
+    
+    // The clock only ticks while the screen is on
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
+                startClock();
+            } else {
+                stopClock();
+            }
+        }
+    };
+    
+    private final ServiceConnection ringConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            ringService = ((AlarmRingService.LocalBinder) binder).getService();
+            if (!ringService.isRinging()) {
+                // The session ended while we were not bound
+                finish();
+                return;
+            }
+            ringService.setListener(AlarmActivity.this);
+            showGroup();
+        }
+        
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            ringService = null;
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] AlarmActivity onCreate called");
+        long createdAt = SystemClock.uptimeMillis();
+        scheduledTime = getIntent().getLongExtra("scheduledTime", 0L);
+        LatencyTracker.get(this).record(LatencyTracker.STAGE_ACTIVITY, scheduledTime, System.currentTimeMillis());
+        events = EventLog.get(this);
         
         // Ensure this activity can be launched from background
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
@@ -35,151 +90,79 @@ public class AlarmActivity extends Activity {
             setTurnScreenOn(true);
         }
         
-        // Get alarm details from intent
-        String title = getIntent().getStringExtra("title");
-        String body = getIntent().getStringExtra("body");
+        // The intent names the fire; the details come from the native store
         alarmId = getIntent().getIntExtra("alarmId", -1);
-        
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Intent data:");
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] - title: " + title);
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] - body: " + body);
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] - alarmId: " + alarmId);
+        alarm = RecentAlarms.resolve(this, alarmId, scheduledTime);
+        events.log(EventLog.ACTIVITY_CREATED, alarmId, scheduledTime);
         
         // Setup full screen alarm like Google Clock
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Setting up full screen alarm...");
         setupFullScreenAlarm();
         
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Setting content view...");
-        try {
-            setContentView(R.layout.activity_alarm);
-            android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] Layout loaded successfully");
-            
-            // Setup UI
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Setting up UI elements...");
-            TextView titleView = findViewById(R.id.alarm_title);
-            TextView bodyView = findViewById(R.id.alarm_body);
-            TextView timeView = findViewById(R.id.current_time);
-            Button snoozeButton = findViewById(R.id.snooze_button);
-            Button dismissButton = findViewById(R.id.dismiss_button);
-            
-            if (titleView != null) {
-                titleView.setText(title != null ? title : "🚨 ALARM");
-                android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Title set: " + title);
-            } else {
-                android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] titleView is null!");
-            }
-            
-            if (bodyView != null) {
-                bodyView.setText(body != null ? body : "Time to wake up!");
-                android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Body set: " + body);
-            } else {
-                android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] bodyView is null!");
-            }
-            
-            // Update current time
-            if (timeView != null) {
-                android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Updating current time...");
-                updateCurrentTime(timeView);
-            } else {
-                android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] timeView is null!");
-            }
-            
-            // Setup buttons
-            if (snoozeButton != null && dismissButton != null) {
-                android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Setting up buttons...");
-                snoozeButton.setOnClickListener(v -> {
-                    android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Snooze button clicked");
-                    snoozeAlarm();
-                });
-                
-                dismissButton.setOnClickListener(v -> {
-                    android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Dismiss button clicked");
-                    dismissAlarm();
-                });
-                android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] Buttons setup completed");
-            } else {
-                android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] Buttons are null!");
-            }
-            
-        } catch (Exception e) {
-            android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] Error setting up UI: " + e.getMessage(), e);
-            // Create a simple fallback UI
-            createFallbackUI(title, body);
-        }
+        // One inflation of a flat layout; every view it needs is in it
+        setContentView(R.layout.activity_alarm);
+        TextView titleView = findViewById(R.id.alarm_title);
+        TextView bodyView = findViewById(R.id.alarm_body);
+        timeView = findViewById(R.id.current_time);
+        titleView.setText(alarm.title);
+        bodyView.setText(alarm.body);
+        findViewById(R.id.snooze_button).setOnClickListener(v -> snoozeAlarm());
+        findViewById(R.id.dismiss_button).setOnClickListener(v -> dismissAlarm());
+        powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        measureFirstFrame(createdAt);
         
-        // Start alarm sound and vibration
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Starting alarm sound and vibration...");
-        startAlarm();
+        // The receiver normally claimed this fire and started the session already; only start it
+        // here when it could not
+        LaunchCoordinator coordinator = LaunchCoordinator.get(this);
+        if (savedInstanceState == null && !coordinator.isClaimed(alarmId, scheduledTime)
+                && coordinator.claim(alarmId, scheduledTime)) {
+            AlarmRingService.start(this, alarmId, scheduledTime);
+        }
+    }
+    
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        int newAlarmId = intent.getIntExtra("alarmId", -1);
+        long newScheduledTime = intent.getLongExtra("scheduledTime", 0L);
+        if (newAlarmId == alarmId && newScheduledTime == scheduledTime) {
+            // Same fire launched again (full-screen intent plus direct launch); count it and keep ringing
+            LaunchCoordinator.get(this).claim(alarmId, scheduledTime);
+            events.log(EventLog.LAUNCH_SUPPRESSED, alarmId, scheduledTime);
+            return;
+        }
+        // A different alarm took over the session; rebuild the views for it without touching playback
+        setIntent(intent);
+        recreate();
+    }
+    
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, AlarmRingService.class), ringConnection, Context.BIND_AUTO_CREATE);
+        // Built per start so a zone or 12/24-hour change while stopped shows up
+        clock = new ClockFormatter(TimeZone.getDefault(), DateFormat.is24HourFormat(this),
+            DateFormatSymbols.getInstance().getAmPmStrings());
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_OFF);
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        registerReceiver(screenReceiver, screenFilter);
+        if (powerManager.isInteractive()) {
+            startClock();
+        }
     }
     
-    private void createFallbackUI(String title, String body) {
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Creating fallback UI...");
-        try {
-            // Create a simple programmatic UI
-            android.widget.LinearLayout layout = new android.widget.LinearLayout(this);
-            layout.setOrientation(android.widget.LinearLayout.VERTICAL);
-            layout.setBackgroundColor(0xFFFF0000); // Red background
-            layout.setGravity(android.view.Gravity.CENTER);
-            layout.setPadding(50, 50, 50, 50);
-            
-            // Title
-            TextView titleView = new TextView(this);
-            titleView.setText(title != null ? title : "🚨 ALARM");
-            titleView.setTextSize(32);
-            titleView.setTextColor(0xFFFFFFFF);
-            titleView.setGravity(android.view.Gravity.CENTER);
-            layout.addView(titleView);
-            
-            // Body
-            TextView bodyView = new TextView(this);
-            bodyView.setText(body != null ? body : "Time to wake up!");
-            bodyView.setTextSize(18);
-            bodyView.setTextColor(0xFFFFFFFF);
-            bodyView.setGravity(android.view.Gravity.CENTER);
-            layout.addView(bodyView);
-            
-            // Time
-            TextView timeView = new TextView(this);
-            timeView.setText(new java.text.SimpleDateFormat("h:mm a", java.util.Locale.getDefault()).format(new java.util.Date()));
-            timeView.setTextSize(48);
-            timeView.setTextColor(0xFFFFFFFF);
-            timeView.setGravity(android.view.Gravity.CENTER);
-            layout.addView(timeView);
-            
-            // Buttons
-            android.widget.LinearLayout buttonLayout = new android.widget.LinearLayout(this);
-            buttonLayout.setOrientation(android.widget.LinearLayout.HORIZONTAL);
-            buttonLayout.setGravity(android.view.Gravity.CENTER);
-            
-            Button snoozeButton = new Button(this);
-            snoozeButton.setText("SNOOZE");
-            snoozeButton.setTextSize(16);
-            snoozeButton.setBackgroundColor(0xFFFFA500);
-            snoozeButton.setTextColor(0xFFFFFFFF);
-            snoozeButton.setOnClickListener(v -> snoozeAlarm());
-            
-            Button dismissButton = new Button(this);
-            dismissButton.setText("DISMISS");
-            dismissButton.setTextSize(16);
-            dismissButton.setBackgroundColor(0xFF00FF00);
-            dismissButton.setTextColor(0xFFFFFFFF);
-            dismissButton.setOnClickListener(v -> dismissAlarm());
-            
-            buttonLayout.addView(snoozeButton);
-            buttonLayout.addView(dismissButton);
-            layout.addView(buttonLayout);
-            
-            setContentView(layout);
-            android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] Fallback UI created successfully");
-            
-        } catch (Exception e) {
-            android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] Error creating fallback UI: " + e.getMessage(), e);
+    @Override
+    protected void onStop() {
+        super.onStop();
+        unregisterReceiver(screenReceiver);
+        stopClock();
+        if (ringService != null) {
+            ringService.setListener(null);
+            ringService = null;
         }
+        unbindService(ringConnection);
     }
     
     private void setupFullScreenAlarm() {
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Setting up full screen alarm...");
-        
         // Make it full screen and wake up the device like Google Clock
         requestWindowFeature(Window.FEATURE_NO_TITLE);
         
@@ -195,149 +178,107 @@ public class AlarmActivity extends Activity {
             WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS
         );
         
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Window flags set");
-        
-        // Acquire wake lock to keep screen on
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(
-            PowerManager.FULL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
-            "PlanMe:AlarmWakeLock"
-        );
-        wakeLock.acquire(10*60*1000L /*10 minutes*/);
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Wake lock acquired");
-        
         // Dismiss keyguard if locked
         KeyguardManager keyguardManager = (KeyguardManager) getSystemService(Context.KEYGUARD_SERVICE);
         if (keyguardManager.isKeyguardLocked()) {
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Keyguard is locked, requesting dismiss");
+            events.log(EventLog.KEYGUARD_LOCKED, alarmId);
             keyguardManager.requestDismissKeyguard(this, null);
-        } else {
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Keyguard is not locked");
         }
-        
-        android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] Full screen alarm setup completed");
     }
     
-    private void updateCurrentTime(TextView timeView) {
-        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("h:mm a", java.util.Locale.getDefault());
-        String currentTime = sdf.format(new java.util.Date());
-        timeView.setText(currentTime);
+    // Records when the first frame is about to draw: latency from the scheduled time, and the
+    // time spent from onCreate to that frame
+    private void measureFirstFrame(long createdAt) {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                LatencyTracker.get(AlarmActivity.this).record(LatencyTracker.STAGE_FRAME, scheduledTime, System.currentTimeMillis());
+                events.log(EventLog.FIRST_FRAME, alarmId, SystemClock.uptimeMillis() - createdAt);
+                return true;
+            }
+        });
     }
     
-    private void startAlarm() {
-        android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Starting alarm sound and vibration...");
-        
-        try {
-            // Set volume to maximum like Google Clock
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Setting audio volume to maximum...");
-            AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-            int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
-            audioManager.setStreamVolume(AudioManager.STREAM_ALARM, maxVolume, 0);
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Volume set to: " + maxVolume);
-            
-            // Play alarm sound continuously
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Getting alarm sound URI...");
-            Uri alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
-            if (alarmUri == null) {
-                android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] No alarm sound, using ringtone...");
-                alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
-            }
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Sound URI: " + alarmUri);
-            
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Creating MediaPlayer...");
-            mediaPlayer = MediaPlayer.create(this, alarmUri);
-            if (mediaPlayer == null) {
-                android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] MediaPlayer is null!");
-                Toast.makeText(this, "❌ Error: Cannot create MediaPlayer", Toast.LENGTH_LONG).show();
-                return;
-            }
-            
-            mediaPlayer.setLooping(true);
-            mediaPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Starting MediaPlayer...");
-            mediaPlayer.start();
-            android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] MediaPlayer started successfully");
-            
-            // Start vibration pattern like Google Clock
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Starting vibration...");
-            vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-            if (vibrator != null && vibrator.hasVibrator()) {
-                long[] pattern = {0, 1000, 1000, 1000, 1000, 1000};
-                vibrator.vibrate(pattern, 0); // Repeat indefinitely
-                android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] Vibration started");
-            } else {
-                android.util.Log.w("AlarmActivity", "⚠️ [ACTIVITY] No vibrator available");
-            }
-            
-            android.util.Log.d("AlarmActivity", "🚨 [ACTIVITY] Showing alarm toast...");
-            Toast.makeText(this, "🚨 ALARM TRIGGERED! 🚨", Toast.LENGTH_LONG).show();
-            android.util.Log.d("AlarmActivity", "✅ [ACTIVITY] Alarm started successfully!");
-            
-        } catch (Exception e) {
-            android.util.Log.e("AlarmActivity", "❌ [ACTIVITY] Error starting alarm: " + e.getMessage(), e);
-            Toast.makeText(this, "❌ Error starting alarm: " + e.getMessage(), Toast.LENGTH_LONG).show();
-        }
+    private void startClock() {
+        clockHandler.removeCallbacks(clockTick);
+        tick();
+    }
+    
+    private void stopClock() {
+        clockHandler.removeCallbacks(clockTick);
+    }
+    
+    // Redraws the clock from the reused buffer and schedules the next update for the coming minute boundary
+    private void tick() {
+        long now = System.currentTimeMillis();
+        timeView.setText(clock.buffer(), 0, clock.format(now));
+        clockHandler.postDelayed(clockTick, ClockFormatter.nextMinute(now) - now);
     }
     
-    private void stopAlarm() {
-        // Stop alarm sound
-        if (mediaPlayer != null) {
-            mediaPlayer.stop();
-            mediaPlayer.release();
-            mediaPlayer = null;
+    // Lists the session's alarms when there is more than one; a single alarm keeps the plain layout
+    private void showGroup() {
+        LinearLayout groupView = findViewById(R.id.grouped_alarms);
+        if (groupView == null || ringService == null) {
+            return;
         }
-        
-        // Stop vibration
-        if (vibrator != null) {
-            vibrator.cancel();
+        groupView.removeAllViews();
+        List<AlarmRecord> alarms = ringService.getAlarms();
+        if (alarms.size() < 2) {
+            groupView.setVisibility(View.GONE);
+            return;
         }
-        
-        // Release wake lock
-        if (wakeLock != null && wakeLock.isHeld()) {
-            wakeLock.release();
+        TextView titleView = findViewById(R.id.alarm_title);
+        if (titleView != null) {
+            titleView.setText(alarms.size() + " alarms");
         }
-        
-        isAlarmActive = false;
+        for (AlarmRecord alarm : alarms) {
+            View item = getLayoutInflater().inflate(R.layout.item_grouped_alarm, groupView, false);
+            TextView itemTitle = item.findViewById(R.id.grouped_alarm_title);
+            Button itemDismiss = item.findViewById(R.id.grouped_alarm_dismiss);
+            itemTitle.setText(alarm.title != null ? alarm.title : "🚨 ALARM");
+            itemDismiss.setOnClickListener(v -> {
+                if (ringService != null) {
+                    ringService.dismiss(alarm.alarmId);
+                }
+            });
+            groupView.addView(item);
+        }
+        groupView.setVisibility(View.VISIBLE);
     }
     
+    // Before the service connects, or after it disconnected, the choice is sent as a command instead
     private void snoozeAlarm() {
-        stopAlarm();
-        
-        // Schedule snooze alarm for 5 minutes later using AlarmManager
-        try {
-            android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
-            android.content.Intent snoozeIntent = new android.content.Intent(this, AlarmReceiver.class);
-            snoozeIntent.setAction("com.planme.alarms.ALARM_TRIGGERED");
-            snoozeIntent.putExtra("title", getIntent().getStringExtra("title"));
-            snoozeIntent.putExtra("body", "Snoozed: " + getIntent().getStringExtra("body"));
-            snoozeIntent.putExtra("alarmId", alarmId);
-            
-            android.app.PendingIntent snoozePendingIntent = android.app.PendingIntent.getBroadcast(
-                this, alarmId + 1000, snoozeIntent, android.app.PendingIntent.FLAG_UPDATE_CURRENT | android.app.PendingIntent.FLAG_IMMUTABLE
-            );
-            
-            long snoozeTime = System.currentTimeMillis() + (5 * 60 * 1000); // 5 minutes
-            alarmManager.setExactAndAllowWhileIdle(android.app.AlarmManager.RTC_WAKEUP, snoozeTime, snoozePendingIntent);
-            
-            Toast.makeText(this, "Alarm snoozed for 5 minutes", Toast.LENGTH_SHORT).show();
-            
-        } catch (Exception e) {
-            Toast.makeText(this, "Error snoozing alarm: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        if (ringService != null) {
+            ringService.snooze();
+        } else {
+            AlarmRingService.send(this, AlarmRingService.ACTION_SNOOZE);
         }
-        
+        Toast.makeText(this, "Alarm snoozed for " + alarm.snoozeMinutes + " minutes", Toast.LENGTH_SHORT).show();
         finish();
     }
     
     private void dismissAlarm() {
-        stopAlarm();
+        if (ringService != null) {
+            ringService.dismiss();
+        } else {
+            AlarmRingService.send(this, AlarmRingService.ACTION_DISMISS);
+        }
         Toast.makeText(this, "Alarm dismissed", Toast.LENGTH_SHORT).show();
         finish();
     }
     
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        stopAlarm();
+    public void onAlarmsChanged() {
+        // An alarm joined the session or one of the group was dismissed
+        showGroup();
+    }
+    
+    @Override
+    public void onRingingStopped(int stoppedAlarmId) {
+        // Snoozed or dismissed from elsewhere, or timed out
+        finish();
     }
     
     @Override
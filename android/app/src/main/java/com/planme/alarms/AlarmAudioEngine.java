@@ -0,0 +1,221 @@
+package com.planme.alarms;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+
+// Owns alarm playback for the process. AlarmReceiver calls prepare() as soon as an alarm fires and
+// AlarmActivity's play() then starts an already prepared source instead of calling the synchronous
+// MediaPlayer.create() on the UI thread. Sounds already decoded by PcmCache are played from the
+// memory-mapped PCM through a PcmPlayer; anything else is decoded by an async-prepared MediaPlayer.
+final class AlarmAudioEngine {
+    private static final String TAG = "AlarmAudioEngine";
+    private static final String DEFAULT_SOUND = "alarm_sound";
+    // A prewarmed player nobody asked to play is released after this long
+    private static final long PREWARM_TIMEOUT_MS = 60_000L;
+
+    private static final AudioAttributes ALARM_ATTRIBUTES = new AudioAttributes.Builder()
+        .setUsage(AudioAttributes.USAGE_ALARM)
+        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+        .build();
+
+    private static AlarmAudioEngine instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable prewarmTimeout = this::releaseIfIdle;
+    private Context appContext;
+    private MediaPlayer player;
+    private Uri playerUri;
+    private PcmCache.Entry pcmEntry;
+    private PcmPlayer pcmPlayer;
+    private boolean prepared;
+    private boolean playWhenReady;
+    private long scheduledTime;
+
+    static synchronized AlarmAudioEngine get() {
+        if (instance == null) {
+            instance = new AlarmAudioEngine();
+        }
+        return instance;
+    }
+
+    private AlarmAudioEngine() {
+    }
+
+    // Starts preparing the alarm's sound without playing it
+    synchronized void prepare(Context context, String sound) {
+        appContext = context.getApplicationContext();
+        Uri uri = resolveSound(appContext, sound);
+        if ((player != null || pcmEntry != null) && uri.equals(playerUri)) {
+            return;
+        }
+        PcmCache.Entry cached = PcmCache.get(appContext).lookup(uri);
+        if (cached != null) {
+            release();
+            playerUri = uri;
+            pcmEntry = cached;
+        } else {
+            open(uri);
+        }
+        mainHandler.removeCallbacks(prewarmTimeout);
+        mainHandler.postDelayed(prewarmTimeout, PREWARM_TIMEOUT_MS);
+    }
+
+    // Plays the alarm's sound, starting immediately when it was prewarmed
+    synchronized boolean play(Context context, String sound, long scheduledTime) {
+        this.scheduledTime = scheduledTime;
+        prepare(context, sound);
+        mainHandler.removeCallbacks(prewarmTimeout);
+        if (pcmEntry != null) {
+            try {
+                pcmPlayer = new PcmPlayer(pcmEntry, ALARM_ATTRIBUTES);
+                pcmPlayer.start();
+                recordSoundStarted();
+                return true;
+            } catch (RuntimeException e) {
+                // AudioTrack could not be created for this format; decode it the slow way instead
+                Log.e(TAG, "Error playing cached sound " + playerUri, e);
+                Uri uri = playerUri;
+                release();
+                open(uri);
+            }
+        }
+        if (player == null) {
+            return false;
+        }
+        if (prepared) {
+            startPlayer();
+        } else {
+            playWhenReady = true;
+        }
+        return true;
+    }
+
+    synchronized void stop() {
+        mainHandler.removeCallbacks(prewarmTimeout);
+        if (pcmPlayer != null) {
+            PcmCache.get(appContext).recheck(playerUri, pcmEntry);
+        }
+        release();
+    }
+
+    private void open(Uri uri) {
+        release();
+        playerUri = uri;
+        MediaPlayer mediaPlayer = new MediaPlayer();
+        mediaPlayer.setAudioAttributes(ALARM_ATTRIBUTES);
+        mediaPlayer.setLooping(true);
+        mediaPlayer.setOnPreparedListener(this::onPrepared);
+        mediaPlayer.setOnErrorListener(this::onError);
+        try {
+            mediaPlayer.setDataSource(appContext, uri);
+            mediaPlayer.prepareAsync();
+            player = mediaPlayer;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error preparing alarm sound " + uri, e);
+            mediaPlayer.release();
+            playerUri = null;
+            Uri fallback = defaultSound();
+            if (fallback != null && !fallback.equals(uri)) {
+                open(fallback);
+            }
+        }
+    }
+
+    private synchronized void onPrepared(MediaPlayer mediaPlayer) {
+        if (mediaPlayer != player) {
+            return;
+        }
+        prepared = true;
+        if (playWhenReady) {
+            startPlayer();
+        }
+    }
+
+    private synchronized boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+        if (mediaPlayer != player) {
+            return true;
+        }
+        Log.e(TAG, "Alarm sound failed (" + what + ", " + extra + "): " + playerUri);
+        // Fall back to the system alarm sound rather than ringing silently
+        Uri fallback = defaultSound();
+        boolean wanted = playWhenReady;
+        if (fallback != null && !fallback.equals(playerUri)) {
+            open(fallback);
+            playWhenReady = wanted;
+        } else {
+            release();
+        }
+        return true;
+    }
+
+    private void startPlayer() {
+        playWhenReady = false;
+        player.start();
+        recordSoundStarted();
+    }
+
+    private void recordSoundStarted() {
+        LatencyTracker latency = LatencyTracker.get(appContext);
+        latency.record(LatencyTracker.STAGE_SOUND, scheduledTime, System.currentTimeMillis());
+        AlarmExecutor.execute(latency::save);
+    }
+
+    private synchronized void releaseIfIdle() {
+        if (pcmPlayer == null && (pcmEntry != null || player != null && !player.isPlaying()) && !playWhenReady) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (pcmPlayer != null) {
+            pcmPlayer.stop();
+            pcmPlayer = null;
+        }
+        pcmEntry = null;
+        if (player != null) {
+            try {
+                if (player.isPlaying()) {
+                    player.stop();
+                }
+            } catch (IllegalStateException ignored) {
+            }
+            player.release();
+            player = null;
+        }
+        playerUri = null;
+        prepared = false;
+        playWhenReady = false;
+    }
+
+    // The per-alarm sound may be a URI, the name of a bundled raw resource, or the default marker
+    static Uri resolveSound(Context context, String sound) {
+        if (sound != null && !sound.isEmpty() && !DEFAULT_SOUND.equals(sound)) {
+            if (sound.contains("://")) {
+                return Uri.parse(sound);
+            }
+            int resId = context.getResources().getIdentifier(sound, "raw", context.getPackageName());
+            if (resId != 0) {
+                return Uri.parse(ContentResolver.SCHEME_ANDROID_RESOURCE + "://" + context.getPackageName() + "/" + resId);
+            }
+        }
+        Uri uri = defaultSound();
+        return uri != null ? uri : Uri.parse("content://settings/system/alarm_alert");
+    }
+
+    private static Uri defaultSound() {
+        Uri uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        if (uri == null) {
+            uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
+        }
+        return uri;
+    }
+}
@@ -0,0 +1,26 @@
+package com.planme.alarms;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Single background thread for receiver and ring-service work that must stay off the main thread.
+// Alarm fires are latency sensitive, so the thread runs at foreground priority.
+public final class AlarmExecutor {
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_FOREGROUND);
+            runnable.run();
+        }, "PlanMe-AlarmExecutor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AlarmExecutor() {
+    }
+
+    public static void execute(Runnable task) {
+        executor.execute(task);
+    }
+}
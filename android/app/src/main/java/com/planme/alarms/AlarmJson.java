@@ -0,0 +1,142 @@
+package com.planme.alarms;
+
+import com.planme.alarms.core.AlarmRecord;
+import com.planme.alarms.core.RecurrenceRule;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+// Bridge JSON <-> alarm-core model. alarm-core stays free of org.json, which only exists on Android.
+final class AlarmJson {
+    // 'priority' is the coarser spelling of the delivery class, index for index
+    private static final String[] PRIORITY_NAMES = {"high", "normal", "low"};
+
+    private AlarmJson() {
+    }
+
+    // 'recurrence' takes a RecurrenceRule spec; the older repeatDaily flag maps to a daily rule.
+    // 'deliveryClass' (exact, windowed, inexact) or 'priority' (high, normal, low) picks the
+    // delivery; alarms that give neither stay exact. Alarms without an id get one from 'newId'.
+    static AlarmRecord record(JSONObject spec, IntSupplier newId) {
+        long scheduledTime = spec.optLong("scheduledTime", 0L);
+        ZoneId zone = ZoneId.systemDefault();
+        JSONObject rule = spec.optJSONObject("recurrence");
+        RecurrenceRule recurrence = rule != null ? recurrence(rule, scheduledTime, zone)
+            : spec.optBoolean("repeatDaily", false) ? RecurrenceRule.daily(scheduledTime, zone)
+            : RecurrenceRule.ONCE;
+        if (recurrence.isRepeating()) {
+            // A first time the rule would skip (excluded date, weekday outside the set) moves to its first real occurrence
+            scheduledTime = recurrence.next(scheduledTime, scheduledTime - 1, zone);
+        }
+        return new AlarmRecord(
+            spec.has("alarmId") ? spec.optInt("alarmId", 0) : newId.getAsInt(),
+            scheduledTime,
+            spec.optString("title", "Alarm"),
+            spec.optString("body", "Time to wake up!"),
+            spec.optString("color", "red"),
+            spec.optString("sound", "alarm_sound"),
+            spec.optInt("snoozeMinutes", 5),
+            recurrence,
+            deliveryClass(spec)
+        );
+    }
+
+    // Accepts {type, weekdays: [1..7, Monday = 1], intervalMinutes, dayOfMonth, exclude: ["yyyy-MM-dd"]};
+    // the time of day and default day of month come from the alarm's first scheduled time
+    static RecurrenceRule recurrence(JSONObject spec, long firstTime, ZoneId zone) {
+        ZonedDateTime first = Instant.ofEpochMilli(firstTime).atZone(zone);
+        int type = Arrays.asList(RecurrenceRule.TYPE_NAMES).indexOf(spec.optString("type", "none"));
+        if (type < 0) {
+            throw new IllegalArgumentException("Unknown recurrence type: " + spec.optString("type"));
+        }
+        int weekdays = 0;
+        JSONArray days = spec.optJSONArray("weekdays");
+        if (days != null) {
+            for (int i = 0; i < days.length(); i++) {
+                int day = days.optInt(i, 0);
+                if (day < 1 || day > 7) {
+                    throw new IllegalArgumentException("Weekday out of range: " + day);
+                }
+                weekdays |= 1 << (day - 1);
+            }
+        }
+        if (type == RecurrenceRule.WEEKLY && weekdays == 0) {
+            weekdays = 1 << (first.getDayOfWeek().getValue() - 1);
+        }
+        int intervalMinutes = spec.optInt("intervalMinutes", 0);
+        if (type == RecurrenceRule.INTERVAL && intervalMinutes <= 0) {
+            throw new IllegalArgumentException("intervalMinutes must be positive");
+        }
+        int dayOfMonth = spec.optInt("dayOfMonth", first.getDayOfMonth());
+        if (dayOfMonth < 1 || dayOfMonth > 31) {
+            throw new IllegalArgumentException("dayOfMonth out of range: " + dayOfMonth);
+        }
+        JSONArray exclude = spec.optJSONArray("exclude");
+        long[] exclusions = new long[exclude != null ? exclude.length() : 0];
+        for (int i = 0; i < exclusions.length; i++) {
+            exclusions[i] = LocalDate.parse(exclude.optString(i)).toEpochDay();
+        }
+        Arrays.sort(exclusions);
+        return new RecurrenceRule(type, first.toLocalTime().toSecondOfDay(), weekdays, intervalMinutes,
+            dayOfMonth, exclusions);
+    }
+
+    static JSONObject toJson(RecurrenceRule rule) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("type", RecurrenceRule.TYPE_NAMES[rule.type]);
+            if (rule.type == RecurrenceRule.WEEKLY) {
+                JSONArray days = new JSONArray();
+                for (int day = 1; day <= 7; day++) {
+                    if ((rule.weekdays & (1 << (day - 1))) != 0) {
+                        days.put(day);
+                    }
+                }
+                json.put("weekdays", days);
+            } else if (rule.type == RecurrenceRule.INTERVAL) {
+                json.put("intervalMinutes", rule.intervalMinutes);
+            } else if (rule.type == RecurrenceRule.MONTHLY) {
+                json.put("dayOfMonth", rule.dayOfMonth);
+            }
+            long[] exclusions = rule.exclusions();
+            if (exclusions.length > 0) {
+                JSONArray exclude = new JSONArray();
+                for (long day : exclusions) {
+                    exclude.put(LocalDate.ofEpochDay(day).toString());
+                }
+                json.put("exclude", exclude);
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return json;
+    }
+
+    private static int deliveryClass(JSONObject spec) {
+        if (spec.has("deliveryClass")) {
+            String name = spec.optString("deliveryClass");
+            int deliveryClass = Arrays.asList(AlarmRecord.DELIVERY_NAMES).indexOf(name);
+            if (deliveryClass < 0) {
+                throw new IllegalArgumentException("Unknown delivery class: " + name);
+            }
+            return deliveryClass;
+        }
+        if (spec.has("priority")) {
+            String name = spec.optString("priority");
+            int deliveryClass = Arrays.asList(PRIORITY_NAMES).indexOf(name);
+            if (deliveryClass < 0) {
+                throw new IllegalArgumentException("Unknown priority: " + name);
+            }
+            return deliveryClass;
+        }
+        return AlarmRecord.DELIVERY_EXACT;
+    }
+}
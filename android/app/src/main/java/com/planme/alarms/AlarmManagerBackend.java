@@ -0,0 +1,134 @@
+package com.planme.alarms;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+import com.planme.alarms.core.AlarmBackend;
+import com.planme.alarms.core.AlarmRecord;
+
+// AlarmBackend on top of AlarmManager: one broadcast PendingIntent to AlarmReceiver per alarm,
+// keyed by alarm id, plus the single queue registration of next-alarm mode and one registration per
+// pending snooze, keyed by alarm id under its own action
+final class AlarmManagerBackend implements AlarmBackend {
+    // Request code of the single queue registration; alarm ids from JS are positive
+    private static final int QUEUE_REQUEST_CODE = -1;
+
+    // Delivery window for windowed alarms; the system may fire them anywhere inside it to batch wakeups.
+    // Android 14 enforces this as the minimum window length.
+    private static final long DELIVERY_WINDOW_MS = 10L * 60 * 1000;
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+
+    AlarmManagerBackend(Context context) {
+        this.context = context;
+        this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+    }
+
+    @Override
+    public boolean canScheduleExact() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S || alarmManager.canScheduleExactAlarms();
+    }
+
+    @Override
+    public void register(AlarmRecord record, int deliveryClass) {
+        // Id and fire time only; the receiver reads the rest from AlarmStore, so changing an alarm's
+        // title or sound needs no new registration
+        Intent alarmIntent = new Intent(context, AlarmReceiver.class);
+        alarmIntent.setAction(AlarmScheduler.ACTION_ALARM_TRIGGERED);
+        alarmIntent.putExtra("alarmId", record.alarmId);
+        alarmIntent.putExtra("scheduledTime", record.scheduledTime);
+
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+            context,
+            record.alarmId,
+            alarmIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        switch (deliveryClass) {
+            case AlarmRecord.DELIVERY_WINDOWED:
+                alarmManager.setWindow(AlarmManager.RTC_WAKEUP, record.scheduledTime, DELIVERY_WINDOW_MS, pendingIntent);
+                break;
+            case AlarmRecord.DELIVERY_INEXACT:
+                // Inexact since KitKat; the system batches it with other wakeups
+                alarmManager.set(AlarmManager.RTC_WAKEUP, record.scheduledTime, pendingIntent);
+                break;
+            default:
+                setExact(record.scheduledTime, pendingIntent);
+                break;
+        }
+    }
+
+    @Override
+    public void unregister(int alarmId) {
+        Intent alarmIntent = new Intent(context, AlarmReceiver.class);
+        alarmIntent.setAction(AlarmScheduler.ACTION_ALARM_TRIGGERED);
+
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(
+            context,
+            alarmId,
+            alarmIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        alarmManager.cancel(pendingIntent);
+        pendingIntent.cancel();
+    }
+
+    void registerSnooze(AlarmRecord snooze) {
+        setExact(snooze.scheduledTime, snoozeIntent(snooze.alarmId, snooze.scheduledTime));
+    }
+
+    void unregisterSnooze(int alarmId) {
+        PendingIntent pendingIntent = snoozeIntent(alarmId, 0L);
+        alarmManager.cancel(pendingIntent);
+        pendingIntent.cancel();
+    }
+
+    @Override
+    public void armQueue(long time) {
+        setExact(time, queueIntent());
+    }
+
+    @Override
+    public void disarmQueue() {
+        PendingIntent pendingIntent = queueIntent();
+        alarmManager.cancel(pendingIntent);
+        pendingIntent.cancel();
+    }
+
+    private PendingIntent queueIntent() {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(AlarmScheduler.ACTION_QUEUE_FIRE);
+        return PendingIntent.getBroadcast(
+            context,
+            QUEUE_REQUEST_CODE,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private PendingIntent snoozeIntent(int alarmId, long time) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(AlarmScheduler.ACTION_SNOOZE_FIRE);
+        intent.putExtra("alarmId", alarmId);
+        intent.putExtra("scheduledTime", time);
+        return PendingIntent.getBroadcast(
+            context,
+            alarmId,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private void setExact(long triggerAt, PendingIntent pendingIntent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerAt, pendingIntent);
+        }
+    }
+}
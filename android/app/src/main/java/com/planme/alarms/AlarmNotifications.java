@@ -0,0 +1,114 @@
+package com.planme.alarms;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.core.app.NotificationCompat;
+
+import com.planme.alarms.core.AlarmRecord;
+
+// Notification setup shared by every alarm fire. The channel is created once per process and the
+// builders are prebuilt templates, so a fire only fills in the per-alarm fields.
+final class AlarmNotifications {
+    static final String CHANNEL_ID = "ALARM_CHANNEL";
+
+    private static volatile boolean channelCreated;
+    private static NotificationManager notificationManager;
+    private static NotificationCompat.Builder alarmTemplate;
+    private static NotificationCompat.Builder missedTemplate;
+
+    private AlarmNotifications() {
+    }
+
+    static void postAlarm(Context context, int alarmId, String title, String body, PendingIntent fullScreenIntent) {
+        Notification notification = buildAlarm(context, title, body, fullScreenIntent);
+        notificationManager.notify(alarmId, notification);
+    }
+
+    // Also used by AlarmRingService as its foreground notification
+    static Notification buildAlarm(Context context, String title, String body, PendingIntent fullScreenIntent) {
+        ensureReady(context);
+        synchronized (AlarmNotifications.class) {
+            return alarmTemplate
+                .setContentTitle(title != null ? title : "🚨 ALARM")
+                .setContentText(body != null ? body : "Time to wake up!")
+                .setFullScreenIntent(fullScreenIntent, true)
+                .build();
+        }
+    }
+
+    static void cancel(Context context, int alarmId) {
+        ensureReady(context);
+        notificationManager.cancel(alarmId);
+    }
+
+    // Plain notification for an alarm whose time passed while the device was off
+    static void postMissed(Context context, AlarmRecord record) {
+        ensureReady(context);
+        Notification notification;
+        synchronized (AlarmNotifications.class) {
+            notification = missedTemplate
+                .setContentTitle("Missed: " + record.title)
+                .setContentText(record.body)
+                .setWhen(record.scheduledTime)
+                .build();
+        }
+        notificationManager.notify(record.alarmId, notification);
+    }
+
+    static void ensureReady(Context context) {
+        if (channelCreated) {
+            return;
+        }
+        synchronized (AlarmNotifications.class) {
+            if (channelCreated) {
+                return;
+            }
+            Context appContext = context.getApplicationContext();
+            notificationManager = (NotificationManager) appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+            createNotificationChannel();
+
+            Uri alarmSound = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+            alarmTemplate = new NotificationCompat.Builder(appContext, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_alert)
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setAutoCancel(false)
+                .setOngoing(true)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setDefaults(NotificationCompat.DEFAULT_ALL)
+                .setSound(alarmSound);
+            missedTemplate = new NotificationCompat.Builder(appContext, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_alert)
+                .setShowWhen(true)
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setAutoCancel(true)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC);
+            channelCreated = true;
+        }
+    }
+
+    private static void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                CHANNEL_ID,
+                "Alarm Notifications",
+                NotificationManager.IMPORTANCE_HIGH
+            );
+            channel.setDescription("High priority alarm notifications");
+            channel.enableLights(true);
+            channel.enableVibration(true);
+            channel.setShowBadge(true);
+            channel.setLockscreenVisibility(Notification.VISIBILITY_PUBLIC);
+            
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
@@ -1,125 +1,172 @@
 package com.planme.alarms;
 
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
-import android.os.PowerManager;
 import android.util.Log;
-import androidx.core.app.NotificationCompat;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class AlarmReceiver extends BroadcastReceiver {
     private static final String TAG = "AlarmReceiver";
-    
+
     @Override
     public void onReceive(Context context, Intent intent) {
-        Log.d(TAG, "🚨 [RECEIVER] Alarm triggered: " + intent.getAction());
-        Log.d(TAG, "🚨 [RECEIVER] Intent extras: " + intent.getExtras());
-        
-        String title = intent.getStringExtra("title");
-        String body = intent.getStringExtra("body");
+        long receivedAt = System.currentTimeMillis();
+        EventLog.get(context).log(EventLog.RECEIVER_TRIGGERED, intent.getIntExtra("alarmId", 0));
+
+        // Everything past this point runs on the alarm executor so the main thread stays free
+        // and several alarms firing together cannot stack up into an ANR
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        AlarmExecutor.execute(() -> {
+            // CPU only, until the ring service holds its own; the full-screen intent and the
+            // activity's window flags turn the screen on
+            WakeLockManager.Hold hold = null;
+            try {
+                hold = WakeLockManager.get(appContext).acquire(WakeLockManager.FIRE, intent.getIntExtra("alarmId", 0));
+                handleAlarm(appContext, intent, receivedAt);
+            } catch (Exception e) {
+                Log.e(TAG, "Error launching alarm", e);
+            } finally {
+                if (hold != null) {
+                    hold.close();
+                }
+                pendingResult.finish();
+            }
+        });
+    }
+
+    private void handleAlarm(Context context, Intent intent, long receivedAt) {
+        AlarmScheduler scheduler = AlarmScheduler.get(context);
+        if (AlarmScheduler.ACTION_QUEUE_FIRE.equals(intent.getAction())) {
+            // Single-registration mode: fire everything that is due and re-arm for the next alarm
+            List<AlarmRecord> due = scheduler.pollDue(System.currentTimeMillis());
+            EventLog.get(context).log(EventLog.QUEUE_FIRED, 0, due.size());
+            // One-shots leave the store when advanced; the ring service and activity find them here
+            RecentAlarms.get(context).putAll(due);
+            for (AlarmRecord record : due) {
+                scheduler.advance(record.alarmId, record.scheduledTime, System.currentTimeMillis());
+            }
+            fireAlarms(context, due, receivedAt);
+            return;
+        }
+
         int alarmId = intent.getIntExtra("alarmId", 0);
+        long scheduledTime = intent.getLongExtra("scheduledTime", 0L);
+        if (AlarmScheduler.ACTION_SNOOZE_FIRE.equals(intent.getAction())) {
+            // A snooze is a fire of its own and does not advance the alarm
+            AlarmRecord snooze = scheduler.takeSnooze(alarmId, scheduledTime);
+            if (snooze == null) {
+                EventLog.get(context).log(EventLog.LAUNCH_SUPPRESSED, alarmId, scheduledTime);
+                return;
+            }
+            List<AlarmRecord> group = Collections.singletonList(snooze);
+            RecentAlarms.get(context).putAll(group);
+            fireAlarms(context, group, receivedAt);
+            return;
+        }
+
+        // The intent names the alarm and the fire; its details come from the native store. An alarm
+        // the store does not know was cancelled, so its fire is stale and does not ring.
+        AlarmRecord fired = RecentAlarms.find(context, alarmId, scheduledTime);
+        if (fired == null) {
+            EventLog.get(context).log(EventLog.LAUNCH_SUPPRESSED, alarmId, scheduledTime);
+            return;
+        }
+        List<AlarmRecord> group = new ArrayList<>();
+        group.add(fired);
+        // Alarms due within the coalescing window ring now, in this session, instead of waking the device again
+        List<AlarmRecord> coalesced = scheduler.takeCoalesced(fired.alarmId, System.currentTimeMillis());
+        group.addAll(coalesced);
+        // One-shots leave the store when advanced; the ring service and activity find them here
+        RecentAlarms.get(context).putAll(group);
+
+        // One-shot alarms are done once they fire; repeating ones are re-armed natively, so the
+        // next occurrence never depends on the WebView being alive
+        for (AlarmRecord record : group) {
+            scheduler.advance(record.alarmId, record.scheduledTime, System.currentTimeMillis());
+        }
+
+        fireAlarms(context, group, receivedAt);
+    }
+
+    private void fireAlarms(Context context, List<AlarmRecord> fired, long receivedAt) {
+        // Each fire rings once however many times it is delivered or relaunched
+        LaunchCoordinator coordinator = LaunchCoordinator.get(context);
+        LatencyTracker latency = LatencyTracker.get(context);
+        List<AlarmRecord> group = new ArrayList<>(fired.size());
+        for (AlarmRecord record : fired) {
+            if (coordinator.claim(record.alarmId, record.scheduledTime)) {
+                latency.record(LatencyTracker.STAGE_RECEIVE, record.scheduledTime, receivedAt);
+                group.add(record);
+            } else {
+                EventLog.get(context).log(EventLog.LAUNCH_SUPPRESSED, record.alarmId, record.scheduledTime);
+            }
+        }
+        if (group.isEmpty()) {
+            return;
+        }
+        // The whole group shares one session, which plays the first alarm's sound
+        AlarmRecord lead = group.get(0);
         
-        Log.d(TAG, "🚨 [RECEIVER] Extracted data:");
-        Log.d(TAG, "🚨 [RECEIVER] - title: " + title);
-        Log.d(TAG, "🚨 [RECEIVER] - body: " + body);
-        Log.d(TAG, "🚨 [RECEIVER] - alarmId: " + alarmId);
+        // Start decoding the sound now so it is ready by the time the activity asks for it
+        AlarmAudioEngine.get().prepare(context, lead.sound);
         
-        // Wake up device if sleeping
-        Log.d(TAG, "🚨 [RECEIVER] Acquiring wake lock to wake up device...");
-        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
-        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(
-            PowerManager.FULL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
-            "PlanMe:AlarmWakeLock"
+        // Create full-screen intent for alarm
+        Intent alarmIntent = new Intent(context, AlarmActivity.class);
+        alarmIntent.putExtra("alarmId", lead.alarmId);
+        alarmIntent.putExtra("scheduledTime", lead.scheduledTime);
+        alarmIntent.addFlags(
+            Intent.FLAG_ACTIVITY_NEW_TASK |
+            Intent.FLAG_ACTIVITY_CLEAR_TOP |
+            Intent.FLAG_ACTIVITY_SINGLE_TOP |
+            Intent.FLAG_ACTIVITY_BROUGHT_TO_FRONT |
+            Intent.FLAG_ACTIVITY_NO_ANIMATION |
+            Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS |
+            Intent.FLAG_ACTIVITY_LAUNCHED_FROM_HISTORY |
+            Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED
+        );
+
+        // Create PendingIntent for full-screen notification
+        PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
+            context,
+            lead.alarmId,
+            alarmIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
-        wakeLock.acquire(10000); // 10 seconds
-        Log.d(TAG, "🚨 [RECEIVER] Wake lock acquired");
+
+        // High-priority notification that launches the full-screen activity
+        AlarmNotifications.postAlarm(context, lead.alarmId, lead.title, lead.body, fullScreenPendingIntent);
+        long notifiedAt = System.currentTimeMillis();
+        for (AlarmRecord record : group) {
+            latency.record(LatencyTracker.STAGE_NOTIFY, record.scheduledTime, notifiedAt);
+        }
         
+        // The ring service owns sound, vibration and wake state for the whole session and takes
+        // over the notification as its foreground notification
         try {
-            // Create notification channel for Android 8+
-            createNotificationChannel(context);
-            
-            // Create full-screen intent for alarm
-            Log.d(TAG, "🚨 [RECEIVER] Creating full-screen alarm intent...");
-            Intent alarmIntent = new Intent(context, AlarmActivity.class);
-            alarmIntent.putExtra("title", title);
-            alarmIntent.putExtra("body", body);
-            alarmIntent.putExtra("alarmId", alarmId);
-            alarmIntent.addFlags(
-                Intent.FLAG_ACTIVITY_NEW_TASK | 
-                Intent.FLAG_ACTIVITY_CLEAR_TOP |
-                Intent.FLAG_ACTIVITY_SINGLE_TOP |
-                Intent.FLAG_ACTIVITY_BROUGHT_TO_FRONT |
-                Intent.FLAG_ACTIVITY_NO_ANIMATION |
-                Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS |
-                Intent.FLAG_ACTIVITY_LAUNCHED_FROM_HISTORY |
-                Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED
-            );
-            
-            // Create PendingIntent for full-screen notification
-            PendingIntent fullScreenPendingIntent = PendingIntent.getActivity(
-                context, 
-                alarmId, 
-                alarmIntent, 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            
-            // Create high-priority notification that launches full-screen activity
-            NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context, "ALARM_CHANNEL")
-                .setSmallIcon(android.R.drawable.ic_dialog_alert)
-                .setContentTitle(title != null ? title : "🚨 ALARM")
-                .setContentText(body != null ? body : "Time to wake up!")
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setCategory(NotificationCompat.CATEGORY_ALARM)
-                .setFullScreenIntent(fullScreenPendingIntent, true)
-                .setAutoCancel(false)
-                .setOngoing(true)
-                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
-                .setDefaults(NotificationCompat.DEFAULT_ALL)
-                .setSound(android.media.RingtoneManager.getDefaultUri(android.media.RingtoneManager.TYPE_ALARM));
-            
-            // Show notification
-            NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationManager.notify(alarmId, notificationBuilder.build());
-            
-            Log.d(TAG, "✅ [RECEIVER] Full-screen alarm notification created!");
-            
-            // Also try direct activity launch as backup
-            Log.d(TAG, "🚨 [RECEIVER] Also trying direct activity launch...");
-            context.startActivity(alarmIntent);
-            Log.d(TAG, "✅ [RECEIVER] Direct activity launch attempted!");
-            
-        } catch (Exception e) {
-            Log.e(TAG, "❌ [RECEIVER] Error launching alarm", e);
-        } finally {
-            // Release wake lock
-            Log.d(TAG, "🚨 [RECEIVER] Releasing wake lock...");
-            if (wakeLock.isHeld()) {
-                wakeLock.release();
-                Log.d(TAG, "✅ [RECEIVER] Wake lock released");
+            AlarmRingService.start(context, group);
+        } catch (IllegalStateException e) {
+            // Background start refused; the activity claims the lead fire and starts the session once
+            // it is in front
+            Log.e(TAG, "Could not start ring service for alarm " + lead.alarmId, e);
+            for (AlarmRecord record : group) {
+                coordinator.release(record.alarmId, record.scheduledTime);
             }
         }
-    }
-    
-    private void createNotificationChannel(Context context) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                "ALARM_CHANNEL",
-                "Alarm Notifications",
-                NotificationManager.IMPORTANCE_HIGH
-            );
-            channel.setDescription("High priority alarm notifications");
-            channel.enableLights(true);
-            channel.enableVibration(true);
-            channel.setShowBadge(true);
-            channel.setLockscreenVisibility(android.app.Notification.VISIBILITY_PUBLIC);
-            
-            NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-            notificationManager.createNotificationChannel(channel);
-            Log.d(TAG, "✅ [RECEIVER] Notification channel created");
+
+        // Also try direct activity launch as backup
+        context.startActivity(alarmIntent);
+        PluginEventQueue pluginEvents = PluginEventQueue.get(context);
+        for (AlarmRecord record : group) {
+            EventLog.get(context).log(EventLog.ALARM_LAUNCHED, record.alarmId, record.scheduledTime);
+            pluginEvents.post(PluginEventQueue.FIRED, record.alarmId, record.scheduledTime);
         }
     }
 }
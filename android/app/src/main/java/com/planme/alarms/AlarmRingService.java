@@ -0,0 +1,330 @@
+package com.planme.alarms;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.media.AudioManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Vibrator;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Foreground service that owns one ringing session: sound, vibration and the CPU wake lock.
+// AlarmReceiver starts it when an alarm fires and AlarmActivity only binds to it for display, so
+// the activity can be recreated, relaunched or hidden without restarting playback.
+// A session can hold several alarms: alarms coalesced into one fire, or that fire while another is
+// ringing, join the running session and are dismissed one by one or snoozed together.
+public class AlarmRingService extends Service {
+    private static final String TAG = "AlarmRingService";
+
+    static final String ACTION_RING = "com.planme.alarms.RING";
+    static final String ACTION_SNOOZE = "com.planme.alarms.SNOOZE";
+    static final String ACTION_DISMISS = "com.planme.alarms.DISMISS";
+
+    // Rings this long before the session silences itself, like the system clock app
+    static final long RING_TIMEOUT_MS = 10L * 60 * 1000;
+    private static final long[] VIBRATION_PATTERN = {0, 1000, 1000, 1000, 1000, 1000};
+
+    // Bound activities are told when the alarms in the session change or the session is over
+    interface Listener {
+        void onAlarmsChanged();
+
+        void onRingingStopped(int alarmId);
+    }
+
+    final class LocalBinder extends Binder {
+        AlarmRingService getService() {
+            return AlarmRingService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable ringTimeout = this::stopRinging;
+    private WakeLockManager wakeLocks;
+    // Keeps the CPU up while the session rings; the activity's window flags keep the screen on
+    private WakeLockManager.Hold ringHold;
+    private Vibrator vibrator;
+    private Listener listener;
+    private EventLog events;
+    private PluginEventQueue pluginEvents;
+
+    // Alarms in the session in fire order; the first one's sound is playing
+    private final List<AlarmRecord> alarms = new ArrayList<>();
+    // The foreground notification keeps the id of the alarm that started the session
+    private int foregroundId;
+
+    static void start(Context context, int alarmId, long scheduledTime) {
+        start(context, new int[]{alarmId}, new long[]{scheduledTime});
+    }
+
+    static void start(Context context, List<AlarmRecord> fired) {
+        int count = fired.size();
+        int[] alarmIds = new int[count];
+        long[] scheduledTimes = new long[count];
+        for (int i = 0; i < count; i++) {
+            alarmIds[i] = fired.get(i).alarmId;
+            scheduledTimes[i] = fired.get(i).scheduledTime;
+        }
+        start(context, alarmIds, scheduledTimes);
+    }
+
+    // Ids and fire times only; the service resolves the details natively
+    private static void start(Context context, int[] alarmIds, long[] scheduledTimes) {
+        Intent intent = new Intent(context, AlarmRingService.class);
+        intent.setAction(ACTION_RING);
+        intent.putExtra("alarmIds", alarmIds);
+        intent.putExtra("scheduledTimes", scheduledTimes);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    // Snoozes or dismisses the session from a caller that is not bound to the service
+    static void send(Context context, String action) {
+        context.startService(new Intent(context, AlarmRingService.class).setAction(action));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        events = EventLog.get(this);
+        pluginEvents = PluginEventQueue.get(this);
+        vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        wakeLocks = WakeLockManager.get(this);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_RING.equals(action)) {
+            ring(intent);
+        } else if (ACTION_SNOOZE.equals(action)) {
+            snooze();
+        } else if (ACTION_DISMISS.equals(action)) {
+            dismiss();
+        } else if (alarms.isEmpty()) {
+            // Restarted without a session to resume
+            stopSelf();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopRinging();
+        super.onDestroy();
+    }
+
+    boolean isRinging() {
+        return !alarms.isEmpty();
+    }
+
+    List<AlarmRecord> getAlarms() {
+        return new ArrayList<>(alarms);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    private void ring(Intent intent) {
+        int[] alarmIds = intent.getIntArrayExtra("alarmIds");
+        long[] scheduledTimes = intent.getLongArrayExtra("scheduledTimes");
+        if (alarmIds == null || alarmIds.length == 0) {
+            if (alarms.isEmpty()) {
+                stopSelf();
+            }
+            return;
+        }
+
+        boolean wasRinging = !alarms.isEmpty();
+        boolean added = false;
+        for (int i = 0; i < alarmIds.length; i++) {
+            int index = indexOf(alarmIds[i]);
+            if (index >= 0 && alarms.get(index).scheduledTime == scheduledTimes[i]) {
+                // Duplicate start for an alarm that is already ringing
+                continue;
+            }
+            AlarmRecord record = RecentAlarms.resolve(this, alarmIds[i], scheduledTimes[i]);
+            if (index >= 0) {
+                alarms.set(index, record);
+            } else {
+                alarms.add(record);
+            }
+            if (wasRinging || i > 0) {
+                // It rings in this session, so a notification posted for it on its own is redundant
+                AlarmNotifications.cancel(this, record.alarmId);
+            }
+            added = true;
+        }
+        if (!wasRinging) {
+            foregroundId = alarms.get(0).alarmId;
+        }
+        // Every start command has to be answered with startForeground; this also refreshes the group text
+        startForegroundNotification();
+        if (!added) {
+            return;
+        }
+        if (wasRinging) {
+            // Joined the running session; sound and vibration carry on
+            if (listener != null) {
+                listener.onAlarmsChanged();
+            }
+            return;
+        }
+
+        AlarmRecord lead = alarms.get(0);
+        if (ringHold != null) {
+            ringHold.close();
+        }
+        ringHold = wakeLocks.acquire(WakeLockManager.RING, lead.alarmId);
+        handler.removeCallbacks(ringTimeout);
+        handler.postDelayed(ringTimeout, RING_TIMEOUT_MS);
+
+        // Set volume to maximum like Google Clock
+        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        audioManager.setStreamVolume(AudioManager.STREAM_ALARM, audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM), 0);
+
+        // The receiver has usually prepared the sound already
+        if (AlarmAudioEngine.get().play(this, lead.sound, lead.scheduledTime)) {
+            events.log(EventLog.SOUND_STARTED, lead.alarmId);
+        } else {
+            Log.e(TAG, "No playable alarm sound for alarm " + lead.alarmId);
+            events.log(EventLog.SOUND_FAILED, lead.alarmId);
+        }
+
+        if (vibrator != null && vibrator.hasVibrator()) {
+            vibrator.vibrate(VIBRATION_PATTERN, 0); // Repeat indefinitely
+            events.log(EventLog.VIBRATION_STARTED, lead.alarmId);
+        }
+    }
+
+    // Snoozes every alarm still in the session. Ringing stops at once; the snoozes are persisted
+    // and registered on AlarmExecutor, off the main thread.
+    void snooze() {
+        List<AlarmRecord> snoozed = new ArrayList<>(alarms);
+        stopRinging();
+        if (snoozed.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (AlarmRecord alarm : snoozed) {
+            events.log(EventLog.SNOOZED, alarm.alarmId, alarm.snoozeMinutes);
+        }
+        Context appContext = getApplicationContext();
+        AlarmExecutor.execute(() -> {
+            // Persisted and registered natively, so the snooze rings even if the process dies or the
+            // device reboots before it is due
+            AlarmScheduler scheduler = AlarmScheduler.get(appContext);
+            for (AlarmRecord alarm : snoozed) {
+                pluginEvents.post(PluginEventQueue.SNOOZED, alarm.alarmId, alarm.scheduledTime, alarm.snoozeMinutes);
+                try {
+                    scheduler.snooze(alarm, now + alarm.snoozeMinutes * 60_000L);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error snoozing alarm " + alarm.alarmId, e);
+                }
+            }
+        });
+    }
+
+    // Dismisses every alarm in the session
+    void dismiss() {
+        List<AlarmRecord> dismissed = new ArrayList<>(alarms);
+        stopRinging();
+        for (AlarmRecord alarm : dismissed) {
+            events.log(EventLog.DISMISSED, alarm.alarmId);
+        }
+        AlarmExecutor.execute(() -> {
+            for (AlarmRecord alarm : dismissed) {
+                pluginEvents.post(PluginEventQueue.DISMISSED, alarm.alarmId, alarm.scheduledTime);
+            }
+        });
+    }
+
+    // Dismisses one alarm of a group; the session keeps ringing while any are left
+    void dismiss(int alarmId) {
+        int index = indexOf(alarmId);
+        if (index < 0) {
+            return;
+        }
+        events.log(EventLog.DISMISSED, alarmId);
+        long scheduledTime = alarms.remove(index).scheduledTime;
+        AlarmExecutor.execute(() -> pluginEvents.post(PluginEventQueue.DISMISSED, alarmId, scheduledTime));
+        if (alarms.isEmpty()) {
+            stopRinging();
+            return;
+        }
+        startForegroundNotification();
+        if (listener != null) {
+            listener.onAlarmsChanged();
+        }
+    }
+
+    // Ends the session and the service with it
+    private void stopRinging() {
+        handler.removeCallbacks(ringTimeout);
+        boolean wasRinging = !alarms.isEmpty();
+        alarms.clear();
+        AlarmAudioEngine.get().stop();
+        if (vibrator != null) {
+            vibrator.cancel();
+        }
+        if (ringHold != null) {
+            ringHold.close();
+            ringHold = null;
+        }
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        if (wasRinging && listener != null) {
+            listener.onRingingStopped(foregroundId);
+        }
+        stopSelf();
+    }
+
+    private void startForegroundNotification() {
+        AlarmRecord lead = alarms.get(0);
+        int count = alarms.size();
+        String title = count > 1 ? count + " alarms" : lead.title;
+        String body = count > 1 ? lead.title + " and " + (count - 1) + " more" : lead.body;
+        Notification notification = AlarmNotifications.buildAlarm(this, title, body, activityIntent(lead));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            startForeground(foregroundId, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_SPECIAL_USE);
+        } else {
+            startForeground(foregroundId, notification);
+        }
+    }
+
+    private int indexOf(int alarmId) {
+        for (int i = 0; i < alarms.size(); i++) {
+            if (alarms.get(i).alarmId == alarmId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private PendingIntent activityIntent(AlarmRecord lead) {
+        Intent intent = new Intent(this, AlarmActivity.class);
+        intent.putExtra("alarmId", lead.alarmId);
+        intent.putExtra("scheduledTime", lead.scheduledTime);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_NO_ANIMATION);
+        return PendingIntent.getActivity(this, foregroundId, intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+}
@@ -0,0 +1,216 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.planme.alarms.core.AlarmEngine;
+import com.planme.alarms.core.AlarmRecord;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// Android side of scheduling: runs the alarm-core AlarmEngine over AlarmStore and AlarmManager,
+// persists the scheduling settings and warms alarm sounds as alarms are added.
+// MODE_PER_ALARM gives every alarm its own PendingIntent (the original behaviour).
+// MODE_NEXT_ALARM keeps pending alarms in an AlarmQueue and registers only the earliest one,
+// so the system-side cost stays at a single PendingIntent however many alarms are stored.
+// Snoozes are kept in SnoozeStore beside the engine and registered with their own PendingIntent.
+public class AlarmScheduler {
+    public static final String ACTION_ALARM_TRIGGERED = "com.planme.alarms.ALARM_TRIGGERED";
+    public static final String ACTION_QUEUE_FIRE = "com.planme.alarms.QUEUE_FIRE";
+    public static final String ACTION_SNOOZE_FIRE = "com.planme.alarms.SNOOZE_FIRE";
+
+    public static final String MODE_PER_ALARM = "perAlarm";
+    public static final String MODE_NEXT_ALARM = "nextAlarm";
+
+    static final String PREFS_NAME = "PlanMeAlarms";
+    private static final String PREF_MODE = "schedulingMode";
+    private static final String PREF_COALESCE_WINDOW = "coalesceWindowMs";
+    // Zone the stored wall-clock times were computed in, so a zone change knows what it moved from
+    private static final String PREF_ANCHOR_ZONE = "anchorZone";
+
+    private static AlarmScheduler instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final AlarmEngine engine;
+    private final AlarmManagerBackend backend;
+    private final SnoozeStore snoozes;
+    private String anchorZone;
+
+    public static synchronized AlarmScheduler get(Context context) {
+        if (instance == null) {
+            instance = new AlarmScheduler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmScheduler(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.backend = new AlarmManagerBackend(context);
+        this.snoozes = SnoozeStore.get(context);
+        this.engine = new AlarmEngine(
+            AlarmStore.get(context),
+            backend,
+            MODE_NEXT_ALARM.equals(prefs.getString(PREF_MODE, MODE_PER_ALARM)),
+            prefs.getLong(PREF_COALESCE_WINDOW, 0L)
+        );
+        this.anchorZone = prefs.getString(PREF_ANCHOR_ZONE, null);
+    }
+
+    public String getMode() {
+        return engine.isQueueMode() ? MODE_NEXT_ALARM : MODE_PER_ALARM;
+    }
+
+    public int deliveryOf(AlarmRecord record) {
+        return engine.deliveryOf(record);
+    }
+
+    public int allocateId() {
+        return engine.allocateId();
+    }
+
+    public long getCoalesceWindowMs() {
+        return engine.getCoalesceWindowMs();
+    }
+
+    public synchronized void setCoalesceWindowMs(long windowMs) {
+        engine.setCoalesceWindowMs(windowMs);
+        prefs.edit().putLong(PREF_COALESCE_WINDOW, windowMs).apply();
+    }
+
+    // Replaces the alarm along with any snooze left from its previous version. A schedule may have
+    // superseded a queued cancel for the same id, whose snooze cancel would otherwise be lost.
+    public void schedule(AlarmRecord record) {
+        rememberZone();
+        cancelSnooze(record.alarmId);
+        engine.schedule(record);
+        PcmCache.get(context).warm(Collections.singleton(record.sound));
+    }
+
+    public void scheduleAll(Collection<AlarmRecord> records) {
+        rememberZone();
+        engine.scheduleAll(records);
+        warm(records);
+    }
+
+    // Also drops a pending snooze, so a cancelled alarm does not come back from it
+    public AlarmRecord cancel(int alarmId) {
+        cancelSnooze(alarmId);
+        return engine.cancel(alarmId);
+    }
+
+    public List<AlarmRecord> cancelAll() {
+        for (AlarmRecord snooze : snoozes.removeAll()) {
+            backend.unregisterSnooze(snooze.alarmId);
+        }
+        return engine.cancelAll();
+    }
+
+    // Rings the alarm again at 'time' with its current details, without moving the alarm itself
+    public void snooze(AlarmRecord alarm, long time) {
+        AlarmRecord snooze = alarm.withScheduledTime(time);
+        snoozes.put(snooze);
+        backend.registerSnooze(snooze);
+    }
+
+    // The snooze firing at 'time', which is then no longer pending; null for a stale delivery
+    public AlarmRecord takeSnooze(int alarmId, long time) {
+        return snoozes.take(alarmId, time);
+    }
+
+    public void cancelSnooze(int alarmId) {
+        if (snoozes.remove(alarmId) != null) {
+            backend.unregisterSnooze(alarmId);
+        }
+    }
+
+    public List<AlarmRecord> pollDue(long now) {
+        return engine.pollDue(now);
+    }
+
+    public List<AlarmRecord> takeCoalesced(int firedId, long now) {
+        return engine.takeCoalesced(firedId, now);
+    }
+
+    public AlarmRecord advance(int alarmId, long firedTime, long now) {
+        return engine.advance(alarmId, firedTime, now);
+    }
+
+    public AlarmEngine.SyncResult sync(Collection<AlarmRecord> desired, long now) {
+        rememberZone();
+        AlarmEngine.SyncResult result = engine.sync(desired, now);
+        warm(result.written);
+        return result;
+    }
+
+    // Re-registers the persisted alarm set and pending snoozes after a reboot or app update has
+    // cleared AlarmManager. Snoozes that expired meanwhile are dropped like expired one-shots.
+    public AlarmEngine.RestoreResult restore(long now) {
+        AlarmEngine.RestoreResult result = engine.restore(now);
+        for (AlarmRecord snooze : snoozes.getAll()) {
+            if (snooze.scheduledTime > now) {
+                backend.registerSnooze(snooze);
+                result.restored++;
+                continue;
+            }
+            snoozes.remove(snooze.alarmId);
+            if (now - snooze.scheduledTime <= AlarmEngine.MISSED_GRACE_MS) {
+                result.missed.add(snooze);
+            } else {
+                result.dropped++;
+            }
+        }
+        return result;
+    }
+
+    // Moves stored alarms to the same local time in 'zone' after a zone change or clock set. Without a
+    // recorded zone the times are taken to be in 'zone' already.
+    public synchronized AlarmEngine.ReanchorResult reanchor(ZoneId zone, long now) {
+        ZoneId from = anchorZone != null ? ZoneId.of(anchorZone) : zone;
+        AlarmEngine.ReanchorResult result = engine.reanchor(from, zone, now);
+        anchorZone = zone.getId();
+        prefs.edit().putString(PREF_ANCHOR_ZONE, anchorZone).apply();
+        return result;
+    }
+
+    // Switches scheduling mode and moves the existing registrations across
+    public synchronized void setMode(String newMode) {
+        if (!MODE_PER_ALARM.equals(newMode) && !MODE_NEXT_ALARM.equals(newMode)) {
+            throw new IllegalArgumentException("Unknown scheduling mode: " + newMode);
+        }
+        int moved = engine.setQueueMode(MODE_NEXT_ALARM.equals(newMode));
+        if (moved < 0) {
+            return;
+        }
+        prefs.edit().putString(PREF_MODE, newMode).apply();
+    }
+
+    // Called before every write from JS. A zone change that TimeChangeReceiver has not handled yet is
+    // handled here first, so the anchor only ever moves together with the stored alarms.
+    private synchronized void rememberZone() {
+        ZoneId zone = ZoneId.systemDefault();
+        if (anchorZone == null) {
+            anchorZone = zone.getId();
+            prefs.edit().putString(PREF_ANCHOR_ZONE, anchorZone).apply();
+        } else if (!zone.getId().equals(anchorZone)) {
+            AlarmEngine.ReanchorResult result = reanchor(zone, System.currentTimeMillis());
+            EventLog.get(context).log(EventLog.REANCHORED, 0, result.changed);
+        }
+    }
+
+    private void warm(Collection<AlarmRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<String> sounds = new ArrayList<>(records.size());
+        for (AlarmRecord record : records) {
+            sounds.add(record.sound);
+        }
+        PcmCache.get(context).warm(sounds);
+    }
+}
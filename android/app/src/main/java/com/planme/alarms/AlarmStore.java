@@ -0,0 +1,318 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.planme.alarms.core.AlarmRecord;
+import com.planme.alarms.core.AlarmRegistry;
+import com.planme.alarms.core.RecurrenceRule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+// Persistent AlarmRegistry of every alarm handed to AlarmManager.
+// On disk it is an append-only log of PUT/REMOVE records that is replayed into an
+// in-memory id index on first use and rewritten (compacted) once dead records pile up.
+// A second in-memory index keeps the alarms sorted by time for range queries.
+public class AlarmStore implements AlarmRegistry {
+    private static final String TAG = "AlarmStore";
+    private static final String FILE_NAME = "alarms.log";
+    private static final int MAGIC = 0x504C4D41; // "PLMA"
+    // Record format version; RecentAlarms writes records in the same format
+    static final int VERSION = 3;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    // Compact when the log holds this many more records than live alarms
+    private static final int COMPACT_SLACK = 256;
+
+    private static AlarmStore instance;
+
+    private final File file;
+    private final Map<Integer, AlarmRecord> alarms = new HashMap<>();
+    private final TreeSet<AlarmRecord> byTime = new TreeSet<>(AlarmRecord.BY_TIME);
+    private DataOutputStream log;
+    private int logRecords;
+
+    public static synchronized AlarmStore get(Context context) {
+        if (instance == null) {
+            instance = new AlarmStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    AlarmStore(File file) {
+        this.file = file;
+        load();
+        byTime.addAll(alarms.values());
+    }
+
+    @Override
+    public synchronized AlarmRecord get(int alarmId) {
+        return alarms.get(alarmId);
+    }
+
+    @Override
+    public synchronized List<AlarmRecord> getAll() {
+        return new ArrayList<>(alarms.values());
+    }
+
+    @Override
+    public synchronized int size() {
+        return alarms.size();
+    }
+
+    @Override
+    public synchronized List<AlarmRecord> range(long from, long to) {
+        if (from > to) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(byTime.subSet(probe(from, Integer.MIN_VALUE), true, probe(to, Integer.MAX_VALUE), true));
+    }
+
+    // Up to 'limit' alarms with from <= scheduledTime <= to, in time order, strictly after the
+    // (afterTime, afterId) position when paging on from a previous page's last alarm
+    public synchronized List<AlarmRecord> range(long from, long to, int limit, long afterTime, int afterId) {
+        List<AlarmRecord> page = new ArrayList<>(Math.max(0, Math.min(limit, alarms.size())));
+        if (from > to || limit <= 0) {
+            return page;
+        }
+        // A cursor from before 'from' (an old page, or a range that was narrowed) starts at 'from'
+        NavigableSet<AlarmRecord> tail = afterTime != Long.MIN_VALUE && afterTime >= from
+            ? byTime.tailSet(probe(afterTime, afterId), false)
+            : byTime.tailSet(probe(from, Integer.MIN_VALUE), true);
+        for (AlarmRecord record : tail) {
+            if (record.scheduledTime > to || page.size() == limit) {
+                break;
+            }
+            page.add(record);
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized void put(AlarmRecord record) {
+        index(record);
+        try {
+            DataOutputStream out = openLog();
+            out.writeByte(OP_PUT);
+            record.writeTo(out);
+            out.flush();
+            logRecords++;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing alarm " + record.alarmId, e);
+            closeLog();
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public synchronized void putAll(Collection<AlarmRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (AlarmRecord record : records) {
+            index(record);
+        }
+        try {
+            DataOutputStream out = openLog();
+            for (AlarmRecord record : records) {
+                out.writeByte(OP_PUT);
+                record.writeTo(out);
+            }
+            out.flush();
+            logRecords += records.size();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing " + records.size() + " alarms", e);
+            closeLog();
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public synchronized AlarmRecord remove(int alarmId) {
+        AlarmRecord removed = alarms.remove(alarmId);
+        if (removed == null) {
+            return null;
+        }
+        byTime.remove(removed);
+        try {
+            DataOutputStream out = openLog();
+            out.writeByte(OP_REMOVE);
+            out.writeInt(alarmId);
+            out.flush();
+            logRecords++;
+        } catch (IOException e) {
+            Log.e(TAG, "Error removing alarm " + alarmId, e);
+            closeLog();
+        }
+        maybeCompact();
+        return removed;
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<Integer> alarmIds) {
+        DataOutputStream out = null;
+        try {
+            for (Integer alarmId : alarmIds) {
+                AlarmRecord removed = alarms.remove(alarmId);
+                if (removed == null) {
+                    continue;
+                }
+                byTime.remove(removed);
+                if (out == null) {
+                    out = openLog();
+                }
+                out.writeByte(OP_REMOVE);
+                out.writeInt(alarmId);
+                logRecords++;
+            }
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error removing " + alarmIds.size() + " alarms", e);
+            closeLog();
+        }
+        if (out != null) {
+            maybeCompact();
+        }
+    }
+
+    // Removes every alarm and returns what was stored so callers can cancel the PendingIntents
+    @Override
+    public synchronized List<AlarmRecord> clear() {
+        List<AlarmRecord> removed = new ArrayList<>(alarms.values());
+        alarms.clear();
+        byTime.clear();
+        // An empty registry compacts down to just the header
+        compact();
+        return removed;
+    }
+
+    private void index(AlarmRecord record) {
+        AlarmRecord previous = alarms.put(record.alarmId, record);
+        if (previous != null) {
+            byTime.remove(previous);
+        }
+        byTime.add(record);
+    }
+
+    // Search key for the time index; only the time and id are compared
+    private static AlarmRecord probe(long time, int alarmId) {
+        return new AlarmRecord(alarmId, time, null, null, null, null, 0, RecurrenceRule.ONCE);
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        boolean truncated = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > VERSION) {
+                Log.w(TAG, "Unknown alarm log format, starting empty");
+                truncated = true;
+            } else {
+                // An older log is read as-is and then rewritten in the current format
+                truncated = version != VERSION;
+                while (true) {
+                    byte op;
+                    try {
+                        op = in.readByte();
+                    } catch (EOFException end) {
+                        break;
+                    }
+                    if (op == OP_PUT) {
+                        AlarmRecord record = AlarmRecord.readFrom(in, version);
+                        alarms.put(record.alarmId, record);
+                    } else if (op == OP_REMOVE) {
+                        alarms.remove(in.readInt());
+                    } else {
+                        truncated = true;
+                        break;
+                    }
+                    logRecords++;
+                }
+            }
+        } catch (EOFException e) {
+            // Partial record from an interrupted write; everything before it is intact
+            truncated = true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading alarm log", e);
+            truncated = true;
+        }
+        Log.d(TAG, "Loaded " + alarms.size() + " alarms from " + logRecords + " log records");
+        if (truncated) {
+            compact();
+        }
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        if (log == null) {
+            boolean fresh = !file.exists() || file.length() == 0;
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (fresh) {
+                log.writeInt(MAGIC);
+                log.writeInt(VERSION);
+                logRecords = 0;
+            }
+        }
+        return log;
+    }
+
+    private void closeLog() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException ignored) {
+            }
+            log = null;
+        }
+    }
+
+    private void maybeCompact() {
+        if (logRecords > alarms.size() + COMPACT_SLACK) {
+            compact();
+        }
+    }
+
+    // Rewrites the log with one PUT per live alarm and swaps it in atomically
+    private void compact() {
+        closeLog();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (AlarmRecord record : alarms.values()) {
+                out.writeByte(OP_PUT);
+                record.writeTo(out);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error compacting alarm log", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Error replacing alarm log");
+            tmp.delete();
+            return;
+        }
+        logRecords = alarms.size();
+    }
+}
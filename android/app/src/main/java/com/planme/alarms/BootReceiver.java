@@ -0,0 +1,68 @@
+package com.planme.alarms;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.planme.alarms.core.AlarmEngine;
+import com.planme.alarms.core.AlarmRecord;
+
+// Restores the persisted alarm set after a reboot or app update, both of which clear AlarmManager.
+// Runs off the main thread under goAsync() and records how long the restore took.
+public class BootReceiver extends BroadcastReceiver {
+    private static final String TAG = "BootReceiver";
+
+    static final String PREF_RESTORE_ACTION = "restoreAction";
+    static final String PREF_RESTORE_AT = "restoreAt";
+    static final String PREF_RESTORE_DURATION_MS = "restoreDurationMs";
+    static final String PREF_RESTORE_RESTORED = "restoreRestored";
+    static final String PREF_RESTORE_MISSED = "restoreMissed";
+    static final String PREF_RESTORE_DROPPED = "restoreDropped";
+
+    // goAsync() gives background broadcasts roughly 10 seconds before the system complains
+    private static final long RESTORE_BUDGET_MS = 8000L;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_BOOT_COMPLETED.equals(action) && !Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+        Log.d(TAG, "Restoring alarms after " + action);
+
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        AlarmExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                AlarmEngine.RestoreResult result = AlarmScheduler.get(appContext).restore(System.currentTimeMillis());
+                for (AlarmRecord record : result.missed) {
+                    AlarmNotifications.postMissed(appContext, record);
+                }
+                long duration = SystemClock.elapsedRealtime() - start;
+                EventLog.get(appContext).log(EventLog.RESTORED, 0, result.restored);
+
+                appContext.getSharedPreferences(AlarmScheduler.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(PREF_RESTORE_ACTION, action)
+                    .putLong(PREF_RESTORE_AT, System.currentTimeMillis())
+                    .putLong(PREF_RESTORE_DURATION_MS, duration)
+                    .putInt(PREF_RESTORE_RESTORED, result.restored)
+                    .putInt(PREF_RESTORE_MISSED, result.missed.size())
+                    .putInt(PREF_RESTORE_DROPPED, result.dropped)
+                    .apply();
+
+                Log.d(TAG, "Restored " + result.restored + " alarms (" + result.missed.size() + " missed, "
+                    + result.dropped + " dropped) in " + duration + "ms");
+                if (duration > RESTORE_BUDGET_MS) {
+                    Log.w(TAG, "Alarm restore took " + duration + "ms, over the " + RESTORE_BUDGET_MS + "ms budget");
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error restoring alarms", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package com.planme.alarms;
+
+import java.util.TimeZone;
+
+// Formats wall-clock time as "h:mm a" (or "HH:mm") into one reused char buffer, so the ringing
+// screen's clock can tick without a formatter, Date or String per update.
+final class ClockFormatter {
+    static final long MINUTE_MS = 60_000L;
+    private static final long MINUTES_PER_DAY = 24 * 60;
+
+    private final TimeZone zone;
+    private final boolean is24Hour;
+    private final char[] am;
+    private final char[] pm;
+    private final char[] buffer;
+
+    ClockFormatter(TimeZone zone, boolean is24Hour, String[] amPmStrings) {
+        this.zone = zone;
+        this.is24Hour = is24Hour;
+        this.am = amPmStrings[0].toCharArray();
+        this.pm = amPmStrings[1].toCharArray();
+        // "hh:mm " plus the longer marker
+        this.buffer = new char[6 + Math.max(am.length, pm.length)];
+    }
+
+    char[] buffer() {
+        return buffer;
+    }
+
+    // Writes 'time' into buffer() and returns the number of chars written
+    int format(long time) {
+        long local = time + zone.getOffset(time);
+        int minuteOfDay = (int) Math.floorMod(Math.floorDiv(local, MINUTE_MS), MINUTES_PER_DAY);
+        int hour = minuteOfDay / 60;
+        int minute = minuteOfDay % 60;
+        int length = 0;
+        if (is24Hour) {
+            buffer[length++] = (char) ('0' + hour / 10);
+            buffer[length++] = (char) ('0' + hour % 10);
+        } else {
+            int h = hour % 12 == 0 ? 12 : hour % 12;
+            if (h >= 10) {
+                buffer[length++] = '1';
+            }
+            buffer[length++] = (char) ('0' + h % 10);
+        }
+        buffer[length++] = ':';
+        buffer[length++] = (char) ('0' + minute / 10);
+        buffer[length++] = (char) ('0' + minute % 10);
+        if (!is24Hour) {
+            char[] marker = hour < 12 ? am : pm;
+            buffer[length++] = ' ';
+            System.arraycopy(marker, 0, buffer, length, marker.length);
+            length += marker.length;
+        }
+        return length;
+    }
+
+    // Start of the minute after 'time'; zone offsets are whole minutes, so this is also a local boundary
+    static long nextMinute(long time) {
+        return Math.floorDiv(time, MINUTE_MS) * MINUTE_MS + MINUTE_MS;
+    }
+}
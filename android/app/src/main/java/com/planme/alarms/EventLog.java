@@ -0,0 +1,154 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Structured diagnostics for the alarm fire path. Each event is a fixed-size binary record
+// (timestamp, event code, alarm id, one numeric argument) written into a preallocated ring
+// buffer, so logging never builds a string. The ring is a memory-mapped file, which lets events
+// from a receiver that ran in an earlier process still show up when the app later dumps the log.
+// Events are echoed to logcat only when enabled with `adb shell setprop log.tag.PlanMeEvents DEBUG`.
+public final class EventLog {
+    private static final String TAG = "PlanMeEvents";
+    private static final String FILE_NAME = "events.bin";
+
+    private static final int MAGIC = 0x504C4D45; // "PLME"
+    static final int CAPACITY = 2048;
+    static final int HEADER_BYTES = 16;
+    // long time, int code, int alarmId, long arg
+    static final int RECORD_BYTES = 24;
+
+    // Event codes. The arg is the scheduled time for scheduled, alarmLaunched and activityCreated,
+    // a count for queueFired, cancelled, restored and reanchored, the snooze minutes, the batch index of a
+    // scheduleFailed entry, 1 when modeChanged switched to single-registration mode, and the
+    // milliseconds from onCreate to the first drawn frame for firstFrame.
+    public static final int RECEIVER_TRIGGERED = 1;
+    public static final int QUEUE_FIRED = 2;
+    public static final int ALARM_LAUNCHED = 3;
+    public static final int ACTIVITY_CREATED = 4;
+    // 5 was layoutFailed; it stays unassigned so codes already written to the ring keep their meaning
+    public static final int KEYGUARD_LOCKED = 6;
+    public static final int SOUND_STARTED = 7;
+    public static final int SOUND_FAILED = 8;
+    public static final int VIBRATION_STARTED = 9;
+    public static final int SNOOZED = 10;
+    public static final int DISMISSED = 11;
+    public static final int SCHEDULED = 12;
+    public static final int SCHEDULE_FAILED = 13;
+    public static final int CANCELLED = 14;
+    public static final int MODE_CHANGED = 15;
+    public static final int RESTORED = 16;
+    public static final int LAUNCH_SUPPRESSED = 17;
+    public static final int FIRST_FRAME = 18;
+    public static final int REANCHORED = 19;
+    static final String[] EVENT_NAMES = {
+        "unknown", "receiverTriggered", "queueFired", "alarmLaunched", "activityCreated", "unknown",
+        "keyguardLocked", "soundStarted", "soundFailed", "vibrationStarted", "snoozed", "dismissed",
+        "scheduled", "scheduleFailed", "cancelled", "modeChanged", "restored", "launchSuppressed",
+        "firstFrame", "reanchored"
+    };
+
+    private static EventLog instance;
+
+    private final ByteBuffer ring;
+    private final boolean logcat;
+
+    public static final class Event {
+        public final long sequence;
+        public final long time;
+        public final int code;
+        public final int alarmId;
+        public final long arg;
+
+        Event(long sequence, long time, int code, int alarmId, long arg) {
+            this.sequence = sequence;
+            this.time = time;
+            this.code = code;
+            this.alarmId = alarmId;
+            this.arg = arg;
+        }
+
+        public String name() {
+            return code > 0 && code < EVENT_NAMES.length ? EVENT_NAMES[code] : EVENT_NAMES[0];
+        }
+    }
+
+    public static synchronized EventLog get(Context context) {
+        if (instance == null) {
+            instance = new EventLog(map(context.getApplicationContext()), Log.isLoggable(TAG, Log.DEBUG));
+        }
+        return instance;
+    }
+
+    EventLog(ByteBuffer ring, boolean logcat) {
+        this.ring = ring.order(ByteOrder.LITTLE_ENDIAN);
+        this.logcat = logcat;
+        if (ring.getInt(0) != MAGIC || ring.getInt(4) != CAPACITY) {
+            clear();
+        }
+    }
+
+    public void log(int code, int alarmId) {
+        log(code, alarmId, 0L);
+    }
+
+    public synchronized void log(int code, int alarmId, long arg) {
+        long time = System.currentTimeMillis();
+        long next = ring.getLong(8);
+        int offset = HEADER_BYTES + (int) (next % CAPACITY) * RECORD_BYTES;
+        ring.putLong(offset, time);
+        ring.putInt(offset + 8, code);
+        ring.putInt(offset + 12, alarmId);
+        ring.putLong(offset + 16, arg);
+        ring.putLong(8, next + 1);
+        if (logcat) {
+            Log.d(TAG, EVENT_NAMES[code] + " alarm=" + alarmId + " arg=" + arg);
+        }
+    }
+
+    // Decodes up to 'limit' of the most recent events, oldest first
+    public synchronized List<Event> snapshot(int limit) {
+        long next = ring.getLong(8);
+        long count = Math.min(Math.min(next, CAPACITY), Math.max(0, limit));
+        List<Event> events = new ArrayList<>((int) count);
+        for (long sequence = next - count; sequence < next; sequence++) {
+            int offset = HEADER_BYTES + (int) (sequence % CAPACITY) * RECORD_BYTES;
+            events.add(new Event(sequence, ring.getLong(offset), ring.getInt(offset + 8),
+                ring.getInt(offset + 12), ring.getLong(offset + 16)));
+        }
+        return events;
+    }
+
+    // Total events ever logged, including those the ring has since overwritten
+    public synchronized long total() {
+        return ring.getLong(8);
+    }
+
+    public synchronized void clear() {
+        ring.putInt(0, MAGIC);
+        ring.putInt(4, CAPACITY);
+        ring.putLong(8, 0L);
+    }
+
+    private static ByteBuffer map(Context context) {
+        long size = HEADER_BYTES + (long) CAPACITY * RECORD_BYTES;
+        File file = new File(context.getNoBackupFilesDir(), FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            // Diagnostics must never break alarms; keep the ring in memory only
+            Log.e(TAG, "Error mapping event log, using memory only", e);
+            return ByteBuffer.allocateDirect((int) size);
+        }
+    }
+}
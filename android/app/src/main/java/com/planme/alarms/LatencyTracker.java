@@ -0,0 +1,178 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Fixed-bucket histograms of how long after its scheduled time an alarm reaches each stage of the
+// fire path. Recording a sample only bumps preallocated counters; the histograms are persisted to
+// a small file so they accumulate across process restarts.
+public final class LatencyTracker {
+    private static final String TAG = "LatencyTracker";
+    private static final String FILE_NAME = "latency.bin";
+    private static final int VERSION = 1;
+
+    public static final int STAGE_RECEIVE = 0;
+    public static final int STAGE_NOTIFY = 1;
+    public static final int STAGE_ACTIVITY = 2;
+    public static final int STAGE_SOUND = 3;
+    public static final int STAGE_FRAME = 4;
+    static final String[] STAGE_NAMES = {"receive", "notify", "activity", "sound", "firstFrame"};
+
+    // Bucket upper bounds in milliseconds; the last bucket collects everything above them
+    static final long[] BUCKET_BOUNDS_MS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, 300000
+    };
+    private static final int BUCKETS = BUCKET_BOUNDS_MS.length + 1;
+
+    private static LatencyTracker instance;
+
+    private final File file;
+    private final long[][] counts = new long[STAGE_NAMES.length][BUCKETS];
+    private final long[] totals = new long[STAGE_NAMES.length];
+    private final long[] sums = new long[STAGE_NAMES.length];
+    private final long[] maxima = new long[STAGE_NAMES.length];
+
+    public static synchronized LatencyTracker get(Context context) {
+        if (instance == null) {
+            instance = new LatencyTracker(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    private LatencyTracker(File file) {
+        this.file = file;
+        load();
+    }
+
+    // Records that an alarm scheduled for scheduledTime reached the given stage at 'now'
+    public synchronized void record(int stage, long scheduledTime, long now) {
+        if (scheduledTime <= 0) {
+            return;
+        }
+        long latency = Math.max(0L, now - scheduledTime);
+        counts[stage][bucketFor(latency)]++;
+        totals[stage]++;
+        sums[stage] += latency;
+        if (latency > maxima[stage]) {
+            maxima[stage] = latency;
+        }
+    }
+
+    public synchronized long count(int stage) {
+        return totals[stage];
+    }
+
+    public synchronized long max(int stage) {
+        return maxima[stage];
+    }
+
+    public synchronized long mean(int stage) {
+        return totals[stage] == 0 ? 0 : sums[stage] / totals[stage];
+    }
+
+    // Upper bound of the bucket holding the given quantile; -1 once it falls in the overflow bucket
+    public synchronized long percentile(int stage, double quantile) {
+        long total = totals[stage];
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[stage][i];
+            if (seen >= target) {
+                return i < BUCKET_BOUNDS_MS.length ? BUCKET_BOUNDS_MS[i] : -1;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized long[] buckets(int stage) {
+        return counts[stage].clone();
+    }
+
+    public synchronized void reset() {
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            Arrays.fill(counts[stage], 0L);
+            totals[stage] = 0;
+            sums[stage] = 0;
+            maxima[stage] = 0;
+        }
+        save();
+    }
+
+    public synchronized void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(STAGE_NAMES.length);
+            out.writeInt(BUCKETS);
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+                out.writeLong(totals[stage]);
+                out.writeLong(sums[stage]);
+                out.writeLong(maxima[stage]);
+                for (int i = 0; i < BUCKETS; i++) {
+                    out.writeLong(counts[stage][i]);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving latency histograms", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // Histograms from a different bucket layout are discarded rather than misread. Stages are
+            // only ever appended, so a file from before a new stage keeps the ones it has.
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int stages = Math.min(in.readInt(), STAGE_NAMES.length);
+            if (in.readInt() != BUCKETS) {
+                return;
+            }
+            for (int stage = 0; stage < stages; stage++) {
+                totals[stage] = in.readLong();
+                sums[stage] = in.readLong();
+                maxima[stage] = in.readLong();
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[stage][i] = in.readLong();
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading latency histograms", e);
+        }
+    }
+
+    private static int bucketFor(long latency) {
+        int low = 0;
+        int high = BUCKET_BOUNDS_MS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (latency <= BUCKET_BOUNDS_MS[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,82 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Single-flight guard for alarm fires. A fire is identified by its token (alarm id plus the
+// scheduled time it fired for); only the first claim of a token may start a ringing session, so
+// the receiver, a full-screen intent and a relaunched activity cannot ring the same fire twice.
+// Rejected claims are counted and the count is persisted for getLaunchStats.
+final class LaunchCoordinator {
+    private static final String PREF_SUPPRESSED = "launchSuppressed";
+    // Fires remembered per process; far more than can ring at once
+    private static final int MAX_TOKENS = 64;
+
+    private static LaunchCoordinator instance;
+
+    private final SharedPreferences prefs;
+    // alarmId -> scheduled time of its most recently claimed fire
+    private final Map<Integer, Long> claimed = new LinkedHashMap<Integer, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+            return size() > MAX_TOKENS;
+        }
+    };
+    private long claims;
+    private long suppressed;
+
+    static synchronized LaunchCoordinator get(Context context) {
+        if (instance == null) {
+            instance = new LaunchCoordinator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LaunchCoordinator(Context context) {
+        this.prefs = context.getSharedPreferences(AlarmScheduler.PREFS_NAME, Context.MODE_PRIVATE);
+        this.suppressed = prefs.getLong(PREF_SUPPRESSED, 0L);
+    }
+
+    // True for the first claim of a fire; later claims are counted as suppressed duplicates
+    synchronized boolean claim(int alarmId, long scheduledTime) {
+        Long previous = claimed.get(alarmId);
+        if (previous != null && previous == scheduledTime) {
+            suppressed++;
+            prefs.edit().putLong(PREF_SUPPRESSED, suppressed).apply();
+            return false;
+        }
+        claimed.put(alarmId, scheduledTime);
+        claims++;
+        return true;
+    }
+
+    synchronized boolean isClaimed(int alarmId, long scheduledTime) {
+        Long previous = claimed.get(alarmId);
+        return previous != null && previous == scheduledTime;
+    }
+
+    // Gives a fire back when the session it was claimed for could not be started
+    synchronized void release(int alarmId, long scheduledTime) {
+        if (isClaimed(alarmId, scheduledTime)) {
+            claimed.remove(alarmId);
+            claims--;
+        }
+    }
+
+    synchronized long claims() {
+        return claims;
+    }
+
+    synchronized long suppressed() {
+        return suppressed;
+    }
+
+    synchronized void resetStats() {
+        claims = 0;
+        suppressed = 0;
+        prefs.edit().putLong(PREF_SUPPRESSED, 0L).apply();
+    }
+}
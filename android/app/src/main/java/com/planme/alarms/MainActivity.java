@@ -1,6 +1,5 @@
 package com.planme.alarms;
 
-import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
 
@@ -10,9 +9,9 @@ import com.planme.alarms.RealAlarmPlugin;
 public class MainActivity extends BridgeActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        
-        // Register the RealAlarmPlugin
+        // Register the RealAlarmPlugin; the bridge loads plugins while super.onCreate builds it.
+        // This activity and its WebView are only for the app UI: firing, re-arming, snoozing and
+        // restore run in AlarmReceiver, AlarmRingService and AlarmActivity without a Bridge.
         Log.d("MainActivity", "Registering RealAlarmPlugin...");
         try {
             registerPlugin(RealAlarmPlugin.class);
@@ -20,23 +19,7 @@ public class MainActivity extends BridgeActivity {
         } catch (Exception e) {
             Log.e("MainActivity", "Failed to register RealAlarmPlugin", e);
         }
-    }
-    
-    @Override
-    protected void onNewIntent(Intent intent) {
-        super.onNewIntent(intent);
         
-        // Handle alarm intent
-        if (intent != null && intent.getAction() != null) {
-            if (intent.getAction().equals("com.planme.alarms.ALARM_TRIGGERED")) {
-                // Launch alarm activity
-                Intent alarmIntent = new Intent(this, AlarmActivity.class);
-                alarmIntent.putExtra("title", intent.getStringExtra("title"));
-                alarmIntent.putExtra("body", intent.getStringExtra("body"));
-                alarmIntent.putExtra("alarmId", intent.getIntExtra("alarmId", -1));
-                alarmIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                startActivity(alarmIntent);
-            }
-        }
+        super.onCreate(savedInstanceState);
     }
 }
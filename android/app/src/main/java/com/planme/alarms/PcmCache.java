@@ -0,0 +1,410 @@
+package com.planme.alarms;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Decoded alarm sounds stored as raw 16-bit PCM files, so ringing never has to decode.
+// Sounds are decoded once when an alarm using them is scheduled. Entries are keyed by sound URI
+// plus a hash of the sound's bytes, so an edited ringtone gets a fresh entry, and the directory
+// is kept under MAX_CACHE_BYTES by evicting the least recently used files. Each file's header also
+// records a cheap identity of its source (the concrete URI behind a settings default, its length and
+// modification time). Checking it takes provider calls, so it happens when alarms are scheduled and
+// after a cached sound has played, never at fire time; warming only re-hashes a sound whose identity
+// moved, and a ring that finds a stale entry still plays it and leaves the new source decoded.
+final class PcmCache {
+    private static final String TAG = "PcmCache";
+    private static final String DIR_NAME = "pcm";
+    private static final String PREFS_NAME = "PlanMePcmCache";
+
+    private static final int MAGIC = 0x50434D32; // "PCM2"
+    // Magic, sample rate, channel count, reserved, source identity hash
+    static final int HEADER_BYTES = 24;
+    private static final int IDENTITY_OFFSET = 16;
+    // Index entries under uri + this suffix hold the source identity the uri's key was computed for
+    private static final String IDENTITY_SUFFIX = "#identity";
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+    // Long ringtones are cut off here and looped; 30s of 48kHz stereo is about 5.5MB
+    private static final long MAX_PCM_BYTES = 30L * 48000 * 2 * 2;
+    private static final long CODEC_TIMEOUT_US = 10_000L;
+
+    private static PcmCache instance;
+
+    private final Context context;
+    private final File dir;
+    private final SharedPreferences index;
+    // Decoding is slow and must not delay alarm fires, so it gets its own low-priority thread
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "PlanMe-PcmDecoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static final class Entry {
+        final MappedByteBuffer pcm;
+        final int sampleRate;
+        final int channelCount;
+        // Hash of the source identity the PCM was decoded from
+        final long identityHash;
+
+        Entry(MappedByteBuffer pcm, int sampleRate, int channelCount, long identityHash) {
+            this.pcm = pcm;
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.identityHash = identityHash;
+        }
+    }
+
+    static synchronized PcmCache get(Context context) {
+        if (instance == null) {
+            instance = new PcmCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PcmCache(Context context) {
+        this.context = context;
+        this.dir = new File(context.getNoBackupFilesDir(), DIR_NAME);
+        this.index = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Decodes any of the given sounds that are not cached yet, in the background
+    void warm(Collection<String> sounds) {
+        Set<String> distinct = new HashSet<>(sounds);
+        decoder.execute(() -> {
+            for (String sound : distinct) {
+                try {
+                    warmUri(AlarmAudioEngine.resolveSound(context, sound));
+                } catch (Exception e) {
+                    Log.e(TAG, "Error caching sound " + sound, e);
+                }
+            }
+            evict();
+        });
+    }
+
+    // Memory-maps the cached PCM for a sound URI, or returns null on a miss. Only the file's header
+    // is checked here; whether the source still matches is left to recheck(), off the fire path.
+    Entry lookup(Uri uri) {
+        String key = index.getString(uri.toString(), null);
+        if (key == null) {
+            return null;
+        }
+        File file = new File(dir, key + ".pcm");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer pcm = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            pcm.order(ByteOrder.LITTLE_ENDIAN);
+            if (pcm.limit() <= HEADER_BYTES || pcm.getInt(0) != MAGIC) {
+                return null;
+            }
+            // Mark as recently used for LRU eviction
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(pcm, pcm.getInt(4), pcm.getInt(8), pcm.getLong(IDENTITY_OFFSET));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Called once an entry has been played: if its sound source has moved since it was decoded,
+    // for example a new default alarm tone was picked, decodes the new source for the next ring
+    void recheck(Uri uri, Entry entry) {
+        decoder.execute(() -> {
+            try {
+                if (identityHash(sourceIdentity(uri)) != entry.identityHash) {
+                    Log.d(TAG, "Cached sound is stale for " + uri);
+                    warmUri(uri);
+                    evict();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error caching sound " + uri, e);
+            }
+        });
+    }
+
+    private void warmUri(Uri uri) throws IOException {
+        String identity = sourceIdentity(uri);
+        String key = index.getString(uri.toString(), null);
+        if (key != null && identity.equals(index.getString(uri + IDENTITY_SUFFIX, null))) {
+            File cached = new File(dir, key + ".pcm");
+            if (cached.exists()) {
+                // Same source as last time; no need to read and hash the whole sound again
+                cached.setLastModified(System.currentTimeMillis());
+                return;
+            }
+        }
+        key = cacheKey(uri);
+        File file = new File(dir, key + ".pcm");
+        if (file.exists() && !hasCurrentFormat(file)) {
+            file.delete();
+        }
+        if (file.exists()) {
+            // Same bytes under a new identity, e.g. the file was touched
+            writeIdentity(file, identity);
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            File tmp = new File(dir, key + ".tmp");
+            long start = System.currentTimeMillis();
+            if (!decode(uri, tmp, identityHash(identity)) || !tmp.renameTo(file)) {
+                tmp.delete();
+                Log.w(TAG, "Sound not cacheable: " + uri);
+                return;
+            }
+            Log.d(TAG, "Cached " + uri + " (" + file.length() + " bytes) in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        index.edit()
+            .putString(uri.toString(), key)
+            .putString(uri + IDENTITY_SUFFIX, identity)
+            .apply();
+    }
+
+    // What the URI currently resolves to, cheaply: a settings default such as the system alarm tone
+    // is followed to the sound it is set to, plus the length and modification time where the
+    // provider reports them. Unknown parts are -1.
+    private String sourceIdentity(Uri uri) {
+        Uri source = uri;
+        if (Settings.AUTHORITY.equals(uri.getAuthority())) {
+            int type = RingtoneManager.getDefaultType(uri);
+            Uri actual = type != -1 ? RingtoneManager.getActualDefaultRingtoneUri(context, type) : null;
+            if (actual != null) {
+                source = actual;
+            }
+        }
+        ContentResolver resolver = context.getContentResolver();
+        long length = -1L;
+        try (AssetFileDescriptor fd = resolver.openAssetFileDescriptor(source, "r")) {
+            if (fd != null) {
+                length = fd.getLength();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable sources fail the decode instead
+        }
+        long modified = -1L;
+        if (ContentResolver.SCHEME_CONTENT.equals(source.getScheme())) {
+            try (Cursor cursor = resolver.query(source, new String[]{MediaStore.MediaColumns.DATE_MODIFIED},
+                    null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    modified = cursor.getLong(0);
+                }
+            } catch (RuntimeException e) {
+                // Providers without the column only contribute the length
+            }
+        }
+        return source + "|" + length + "|" + modified;
+    }
+
+    private static long identityHash(String identity) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(identity.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            return identity.hashCode();
+        }
+    }
+
+    private static boolean hasCurrentFormat(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() > HEADER_BYTES && Integer.reverseBytes(raf.readInt()) == MAGIC;
+        }
+    }
+
+    private static void writeIdentity(File file, String identity) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer hash = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            hash.putLong(identityHash(identity)).flip();
+            channel.write(hash, IDENTITY_OFFSET);
+        }
+    }
+
+    // URI plus a hash of the sound's current bytes
+    private String cacheKey(Uri uri) throws IOException {
+        try {
+            MessageDigest content = MessageDigest.getInstance("SHA-1");
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new IOException("Cannot open " + uri);
+                }
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    content.update(buffer, 0, read);
+                }
+            }
+            MessageDigest key = MessageDigest.getInstance("SHA-1");
+            key.update(uri.toString().getBytes(StandardCharsets.UTF_8));
+            key.update(content.digest());
+            return toHex(Arrays.copyOf(key.digest(), 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean decode(Uri uri, File out, long identityHash) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) {
+                return false;
+            }
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            long written = 0;
+            try (FileChannel channel = new FileOutputStream(out).getChannel()) {
+                // Header is filled in once the output format is known
+                channel.position(HEADER_BYTES);
+                MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+                boolean inputDone = false;
+                boolean outputDone = false;
+                while (!outputDone) {
+                    if (!inputDone) {
+                        int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                        if (inIndex >= 0) {
+                            int size = extractor.readSampleData(codec.getInputBuffer(inIndex), 0);
+                            if (size < 0) {
+                                codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                                inputDone = true;
+                            } else {
+                                codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                                extractor.advance();
+                            }
+                        }
+                    }
+                    int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                    if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        MediaFormat outFormat = codec.getOutputFormat();
+                        sampleRate = outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                        channelCount = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                        if (outFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                                && outFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                            return false;
+                        }
+                    } else if (outIndex >= 0) {
+                        ByteBuffer decoded = codec.getOutputBuffer(outIndex);
+                        if (decoded != null && info.size > 0) {
+                            decoded.position(info.offset);
+                            decoded.limit(info.offset + info.size);
+                            while (decoded.hasRemaining()) {
+                                written += channel.write(decoded);
+                            }
+                        }
+                        codec.releaseOutputBuffer(outIndex, false);
+                        if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0 || written >= MAX_PCM_BYTES) {
+                            outputDone = true;
+                        }
+                    }
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(sampleRate).putInt(channelCount).putInt(0).putLong(identityHash).flip();
+                channel.write(header, 0);
+            }
+            return written > 0 && (channelCount == 1 || channelCount == 2);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException ignored) {
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void evict() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".pcm"));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        Set<String> evicted = new HashSet<>();
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                evicted.add(file.getName().substring(0, file.getName().length() - ".pcm".length()));
+            }
+        }
+        SharedPreferences.Editor editor = index.edit();
+        for (Map.Entry<String, ?> entry : index.getAll().entrySet()) {
+            if (evicted.contains(entry.getValue())) {
+                editor.remove(entry.getKey());
+                editor.remove(entry.getKey() + IDENTITY_SUFFIX);
+            }
+        }
+        editor.apply();
+        Log.d(TAG, "Evicted " + evicted.size() + " cached sounds");
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
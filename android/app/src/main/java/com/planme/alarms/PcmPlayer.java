@@ -0,0 +1,84 @@
+package com.planme.alarms;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+
+// Loops a memory-mapped PcmCache entry into a streaming AudioTrack. Writes go straight from the
+// mapped buffer to the track, so there is no decoding and no copy through the Java heap.
+final class PcmPlayer {
+    private static final String TAG = "PcmPlayer";
+    private static final int CHUNK_BYTES = 16 * 1024;
+
+    private final PcmCache.Entry entry;
+    private final AudioTrack track;
+    private volatile boolean running;
+    private Thread thread;
+
+    PcmPlayer(PcmCache.Entry entry, AudioAttributes attributes) {
+        this.entry = entry;
+        int channelMask = entry.channelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+        int minBuffer = AudioTrack.getMinBufferSize(entry.sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        this.track = new AudioTrack.Builder()
+            .setAudioAttributes(attributes)
+            .setAudioFormat(new AudioFormat.Builder()
+                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .setSampleRate(entry.sampleRate)
+                .setChannelMask(channelMask)
+                .build())
+            .setBufferSizeInBytes(Math.max(minBuffer, CHUNK_BYTES) * 2)
+            .setTransferMode(AudioTrack.MODE_STREAM)
+            .build();
+    }
+
+    void start() {
+        running = true;
+        track.play();
+        thread = new Thread(this::stream, "PlanMe-PcmPlayer");
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        try {
+            track.pause();
+            track.flush();
+        } catch (IllegalStateException ignored) {
+        }
+        if (thread != null) {
+            try {
+                thread.join(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        track.release();
+    }
+
+    private void stream() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        // Each thread works on its own view of the shared mapping
+        ByteBuffer pcm = entry.pcm.duplicate();
+        int end = pcm.limit();
+        try {
+            while (running) {
+                for (int offset = PcmCache.HEADER_BYTES; offset < end && running; ) {
+                    int size = Math.min(CHUNK_BYTES, end - offset);
+                    pcm.limit(offset + size).position(offset);
+                    int written = track.write(pcm, size, AudioTrack.WRITE_BLOCKING);
+                    if (written < 0) {
+                        Log.e(TAG, "AudioTrack write failed: " + written);
+                        return;
+                    }
+                    offset += written;
+                }
+            }
+        } catch (IllegalStateException e) {
+            // Track released underneath us while stopping
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Alarm lifecycle events (fired, snoozed, dismissed) on their way to JS. While the plugin is
+// loaded they go straight to it; otherwise they are appended to a small file and handed over in
+// one flush when the bridge attaches, so the web layer learns what happened without polling.
+final class PluginEventQueue {
+    private static final String TAG = "PluginEventQueue";
+    private static final String FILE_NAME = "plugin_events.bin";
+
+    static final int FIRED = 0;
+    static final int SNOOZED = 1;
+    static final int DISMISSED = 2;
+    static final String[] EVENT_NAMES = {"alarmFired", "alarmSnoozed", "alarmDismissed"};
+
+    // Oldest events are dropped beyond this; JS only needs the recent history
+    static final int MAX_PENDING = 256;
+
+    private static PluginEventQueue instance;
+
+    private final File file;
+    private final List<Event> pending = new ArrayList<>();
+    private Sink sink;
+
+    interface Sink {
+        // 'replay' is true for events that were queued while no sink was attached
+        void deliver(Event event, boolean replay);
+    }
+
+    static final class Event {
+        final int type;
+        final int alarmId;
+        final long scheduledTime;
+        final long time;
+        // Snooze minutes for alarmSnoozed, 0 otherwise
+        final int arg;
+
+        Event(int type, int alarmId, long scheduledTime, long time, int arg) {
+            this.type = type;
+            this.alarmId = alarmId;
+            this.scheduledTime = scheduledTime;
+            this.time = time;
+            this.arg = arg;
+        }
+
+        String name() {
+            return EVENT_NAMES[type];
+        }
+    }
+
+    static synchronized PluginEventQueue get(Context context) {
+        if (instance == null) {
+            instance = new PluginEventQueue(new File(context.getApplicationContext().getNoBackupFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    PluginEventQueue(File file) {
+        this.file = file;
+        load();
+    }
+
+    void post(int type, int alarmId, long scheduledTime) {
+        post(type, alarmId, scheduledTime, 0);
+    }
+
+    synchronized void post(int type, int alarmId, long scheduledTime, int arg) {
+        Event event = new Event(type, alarmId, scheduledTime, System.currentTimeMillis(), arg);
+        if (sink != null) {
+            sink.deliver(event, false);
+            return;
+        }
+        pending.add(event);
+        if (pending.size() > MAX_PENDING) {
+            pending.remove(0);
+            rewrite();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            write(out, event);
+        } catch (IOException e) {
+            Log.e(TAG, "Error queueing " + event.name() + " for alarm " + alarmId, e);
+        }
+    }
+
+    // Hands every queued event to 'sink' in order, then routes new events straight to it
+    synchronized void attach(Sink sink) {
+        this.sink = sink;
+        for (Event event : pending) {
+            sink.deliver(event, true);
+        }
+        pending.clear();
+        file.delete();
+    }
+
+    synchronized void detach(Sink sink) {
+        if (this.sink == sink) {
+            this.sink = null;
+        }
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException end) {
+                    break;
+                }
+                Event event = new Event(type, in.readInt(), in.readLong(), in.readLong(), in.readInt());
+                if (type >= 0 && type < EVENT_NAMES.length) {
+                    pending.add(event);
+                }
+            }
+        } catch (IOException e) {
+            // A partial record from an interrupted write; everything before it is kept
+            Log.w(TAG, "Truncated event queue, kept " + pending.size() + " events");
+        }
+        while (pending.size() > MAX_PENDING) {
+            pending.remove(0);
+        }
+    }
+
+    private void rewrite() {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (Event event : pending) {
+                write(out, event);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error rewriting event queue", e);
+        }
+    }
+
+    private static void write(DataOutputStream out, Event event) throws IOException {
+        out.writeByte(event.type);
+        out.writeInt(event.alarmId);
+        out.writeLong(event.scheduledTime);
+        out.writeLong(event.time);
+        out.writeInt(event.arg);
+    }
+}
@@ -1,86 +1,86 @@
 package com.planme.alarms;
 
 import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Build;
 import android.os.PowerManager;
 import android.util.Log;
 import android.provider.Settings;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import com.planme.alarms.core.AlarmEngine;
+import com.planme.alarms.core.AlarmRecord;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
 
 @CapacitorPlugin(name = "RealAlarm")
 public class RealAlarmPlugin extends Plugin {
     
     private static final String TAG = "RealAlarmPlugin";
+    private static final int DEFAULT_LIST_LIMIT = 50;
+    private static final int MAX_LIST_LIMIT = 500;
     private AlarmManager alarmManager;
+    private AlarmScheduler scheduler;
+    private EventLog events;
+    // Events are retained until JS adds a listener, since the load-time flush runs before the page registers one
+    private final PluginEventQueue.Sink pluginEventSink = (event, replay) -> {
+        JSObject data = new JSObject();
+        data.put("alarmId", event.alarmId);
+        data.put("scheduledTime", event.scheduledTime);
+        data.put("time", event.time);
+        data.put("replayed", replay);
+        if (event.type == PluginEventQueue.SNOOZED) {
+            data.put("snoozeMinutes", event.arg);
+        }
+        notifyListeners(event.name(), data, true);
+    };
     
     @Override
     public void load() {
         alarmManager = (AlarmManager) getContext().getSystemService(Context.ALARM_SERVICE);
+        scheduler = AlarmScheduler.get(getContext());
+        events = EventLog.get(getContext());
+        // Fire, snooze and dismiss events queued while the WebView was gone arrive here in one flush
+        PluginEventQueue.get(getContext()).attach(pluginEventSink);
+    }
+    
+    @Override
+    protected void handleOnDestroy() {
+        PluginEventQueue.get(getContext()).detach(pluginEventSink);
+        super.handleOnDestroy();
     }
     
     @PluginMethod
     public void scheduleRealAlarm(PluginCall call) {
+        enqueue(call, call.getData().optInt("alarmId", 0), "scheduling alarm", () -> scheduleRealAlarmNow(call));
+    }
+    
+    private void scheduleRealAlarmNow(PluginCall call) {
         try {
-            Log.d(TAG, "scheduleRealAlarm called with: " + call.getData().toString());
-            int alarmId = call.getInt("alarmId", 0);
-            String title = call.getString("title", "Alarm");
-            String body = call.getString("body", "Time to wake up!");
-            long scheduledTime = call.getLong("scheduledTime", 0L);
-            String color = call.getString("color", "red");
-            String sound = call.getString("sound", "alarm_sound");
-            int snoozeMinutes = call.getInt("snoozeMinutes", 5);
-            boolean repeatDaily = call.getBoolean("repeatDaily", false);
-            
-            // Create intent for AlarmReceiver
-            Intent alarmIntent = new Intent(getContext(), AlarmReceiver.class);
-            alarmIntent.setAction("com.planme.alarms.ALARM_TRIGGERED");
-            alarmIntent.putExtra("title", title);
-            alarmIntent.putExtra("body", body);
-            alarmIntent.putExtra("alarmId", alarmId);
-            alarmIntent.putExtra("color", color);
-            alarmIntent.putExtra("sound", sound);
-            alarmIntent.putExtra("snoozeMinutes", snoozeMinutes);
-            alarmIntent.putExtra("repeatDaily", repeatDaily);
-            
-            // Create PendingIntent
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                getContext(),
-                alarmId,
-                alarmIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            
-            // Schedule alarm using AlarmManager
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                alarmManager.setExactAndAllowWhileIdle(
-                    AlarmManager.RTC_WAKEUP,
-                    scheduledTime,
-                    pendingIntent
-                );
-            } else {
-                alarmManager.setExact(
-                    AlarmManager.RTC_WAKEUP,
-                    scheduledTime,
-                    pendingIntent
-                );
-            }
-            
-            Log.d(TAG, "Real alarm scheduled: " + alarmId + " for " + new java.util.Date(scheduledTime));
+            AlarmRecord record = AlarmJson.record(call.getData(), scheduler::allocateId);
+            scheduler.schedule(record);
+            int alarmId = record.alarmId;
+            events.log(EventLog.SCHEDULED, alarmId, record.scheduledTime);
             
             JSObject result = new JSObject();
             result.put("success", true);
             result.put("alarmId", alarmId);
+            result.put("scheduledTime", record.scheduledTime);
+            result.put("deliveryClass", AlarmRecord.DELIVERY_NAMES[scheduler.deliveryOf(record)]);
             call.resolve(result);
             
         } catch (Exception e) {
@@ -89,13 +89,193 @@ public class RealAlarmPlugin extends Plugin {
         }
     }
     
+    @PluginMethod
+    public void scheduleRealAlarms(PluginCall call) {
+        enqueue(call, 0, "scheduling alarms", () -> scheduleRealAlarmsNow(call));
+    }
+    
+    private void scheduleRealAlarmsNow(PluginCall call) {
+        try {
+            JSArray alarms = call.getArray("alarms");
+            if (alarms == null) {
+                call.reject("Must provide an alarms array");
+                return;
+            }
+            // Schedule every alarm in one pass; a bad entry is reported but does not abort the batch
+            JSArray results = new JSArray();
+            List<AlarmRecord> records = new ArrayList<>(alarms.length());
+            for (int i = 0; i < alarms.length(); i++) {
+                JSObject item = new JSObject();
+                JSONObject spec = alarms.optJSONObject(i);
+                try {
+                    if (spec == null) {
+                        throw new IllegalArgumentException("alarm at index " + i + " is not an object");
+                    }
+                    AlarmRecord record = AlarmJson.record(spec, scheduler::allocateId);
+                    records.add(record);
+                    item.put("alarmId", record.alarmId);
+                    item.put("scheduledTime", record.scheduledTime);
+                    item.put("deliveryClass", AlarmRecord.DELIVERY_NAMES[scheduler.deliveryOf(record)]);
+                    item.put("success", true);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error scheduling alarm at index " + i, e);
+                    int alarmId = spec != null ? spec.optInt("alarmId", 0) : 0;
+                    events.log(EventLog.SCHEDULE_FAILED, alarmId, i);
+                    if (spec != null) {
+                        item.put("alarmId", alarmId);
+                    }
+                    item.put("success", false);
+                    item.put("error", e.getMessage());
+                }
+                results.put(item);
+            }
+            // Register and persist the whole batch in one pass with a single registry write
+            scheduler.scheduleAll(records);
+            int scheduled = records.size();
+            for (AlarmRecord record : records) {
+                events.log(EventLog.SCHEDULED, record.alarmId, record.scheduledTime);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("success", scheduled == alarms.length());
+            result.put("scheduled", scheduled);
+            result.put("failed", alarms.length() - scheduled);
+            result.put("results", results);
+            call.resolve(result);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error scheduling real alarms", e);
+            call.reject("Error scheduling alarms: " + e.getMessage());
+        }
+    }
+    
+    @PluginMethod
+    public void syncAlarms(PluginCall call) {
+        enqueue(call, 0, "syncing alarms", () -> syncAlarmsNow(call));
+    }
+    
+    private void syncAlarmsNow(PluginCall call) {
+        try {
+            JSArray alarms = call.getArray("alarms");
+            if (alarms == null) {
+                call.reject("Must provide an alarms array");
+                return;
+            }
+            // The desired set replaces the registry, so one bad entry rejects the whole sync rather
+            // than cancelling the alarm it was meant to describe
+            List<AlarmRecord> desired = new ArrayList<>(alarms.length());
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject spec = alarms.optJSONObject(i);
+                if (spec == null) {
+                    call.reject("Error syncing alarms: alarm at index " + i + " is not an object");
+                    return;
+                }
+                desired.add(AlarmJson.record(spec, scheduler::allocateId));
+            }
+            AlarmEngine.SyncResult sync = scheduler.sync(desired, System.currentTimeMillis());
+            if (sync.removed > 0) {
+                events.log(EventLog.CANCELLED, 0, sync.removed);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("added", sync.added);
+            result.put("removed", sync.removed);
+            result.put("changed", sync.changed);
+            result.put("unchanged", sync.unchanged);
+            call.resolve(result);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error syncing alarms", e);
+            call.reject("Error syncing alarms: " + e.getMessage());
+        }
+    }
+    
+    @PluginMethod
+    public void listAlarms(PluginCall call) {
+        enqueue(call, 0, "listing alarms", () -> listAlarmsNow(call));
+    }
+    
+    private void listAlarmsNow(PluginCall call) {
+        try {
+            long from = call.getLong("from", 0L);
+            long to = call.getLong("to", Long.MAX_VALUE);
+            int limit = Math.min(Math.max(call.getInt("limit", DEFAULT_LIST_LIMIT), 1), MAX_LIST_LIMIT);
+            // The cursor is the last alarm of the previous page as "scheduledTime:alarmId"
+            long afterTime = Long.MIN_VALUE;
+            int afterId = 0;
+            String cursor = call.getString("cursor");
+            if (cursor != null) {
+                int split = cursor.indexOf(':');
+                if (split < 0) {
+                    call.reject("Invalid cursor: " + cursor);
+                    return;
+                }
+                afterTime = Long.parseLong(cursor.substring(0, split));
+                afterId = Integer.parseInt(cursor.substring(split + 1));
+            }
+            
+            List<AlarmRecord> page = AlarmStore.get(getContext()).range(from, to, limit, afterTime, afterId);
+            JSArray alarms = new JSArray();
+            for (AlarmRecord record : page) {
+                JSObject item = new JSObject();
+                item.put("alarmId", record.alarmId);
+                item.put("scheduledTime", record.scheduledTime);
+                item.put("title", record.title);
+                item.put("body", record.body);
+                item.put("sound", record.sound);
+                item.put("deliveryClass", AlarmRecord.DELIVERY_NAMES[record.deliveryClass]);
+                if (record.isRepeating()) {
+                    item.put("recurrence", AlarmJson.toJson(record.recurrence));
+                }
+                alarms.put(item);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("alarms", alarms);
+            if (page.size() == limit) {
+                AlarmRecord last = page.get(page.size() - 1);
+                result.put("nextCursor", last.scheduledTime + ":" + last.alarmId);
+            }
+            call.resolve(result);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error listing alarms", e);
+            call.reject("Error listing alarms: " + e.getMessage());
+        }
+    }
+    
+    // Runs a state-changing call on the scheduling thread, in order with every other one. A call for
+    // one alarm may be replaced by a later call for the same alarm while it waits; it then resolves
+    // as superseded, so the replacing call must leave the alarm as the pair would have (scheduling
+    // drops a pending snooze just like cancelling does). alarmId 0 acts on the whole set.
+    private void enqueue(PluginCall call, int alarmId, String action, Runnable work) {
+        boolean accepted = SchedulingQueue.get().submit(alarmId, new SchedulingQueue.Task() {
+            @Override
+            public void run() {
+                work.run();
+            }
+            
+            @Override
+            public void superseded() {
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("alarmId", alarmId);
+                result.put("superseded", true);
+                call.resolve(result);
+            }
+        });
+        if (!accepted) {
+            call.reject("Error " + action + ": scheduling queue is full");
+        }
+    }
+    
     @PluginMethod
     public void checkAndRequestExactAlarm(PluginCall call) {
         try {
             boolean allowed = true;
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
                 allowed = alarmManager.canScheduleExactAlarms();
-                Log.d(TAG, "canScheduleExactAlarms = " + allowed);
                 if (!allowed) {
                     Intent intent = new Intent(Settings.ACTION_REQUEST_SCHEDULE_EXACT_ALARM);
                     intent.setData(Uri.parse("package:" + getContext().getPackageName()));
@@ -119,7 +299,6 @@ public class RealAlarmPlugin extends Plugin {
             boolean ignoring = false;
             if (pm != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 ignoring = pm.isIgnoringBatteryOptimizations(getContext().getPackageName());
-                Log.d(TAG, "isIgnoringBatteryOptimizations = " + ignoring);
                 if (!ignoring) {
                     Intent intent = new Intent(Settings.ACTION_REQUEST_IGNORE_BATTERY_OPTIMIZATIONS);
                     intent.setData(Uri.parse("package:" + getContext().getPackageName()));
@@ -138,23 +317,15 @@ public class RealAlarmPlugin extends Plugin {
 
     @PluginMethod
     public void cancelRealAlarm(PluginCall call) {
+        enqueue(call, call.getInt("alarmId", 0), "cancelling alarm", () -> cancelRealAlarmNow(call));
+    }
+    
+    private void cancelRealAlarmNow(PluginCall call) {
         try {
             int alarmId = call.getInt("alarmId", 0);
             
-            Intent alarmIntent = new Intent(getContext(), AlarmReceiver.class);
-            alarmIntent.setAction("com.planme.alarms.ALARM_TRIGGERED");
-            
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                getContext(),
-                alarmId,
-                alarmIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            
-            alarmManager.cancel(pendingIntent);
-            pendingIntent.cancel();
-            
-            Log.d(TAG, "Real alarm cancelled: " + alarmId);
+            scheduler.cancel(alarmId);
+            events.log(EventLog.CANCELLED, alarmId, 1);
             
             JSObject result = new JSObject();
             result.put("success", true);
@@ -168,13 +339,18 @@ public class RealAlarmPlugin extends Plugin {
     
     @PluginMethod
     public void cancelAllRealAlarms(PluginCall call) {
+        enqueue(call, 0, "cancelling all alarms", () -> cancelAllRealAlarmsNow(call));
+    }
+    
+    private void cancelAllRealAlarmsNow(PluginCall call) {
         try {
-            // Cancel all alarms by cancelling all pending intents
-            // This is a simplified approach - in production you'd track alarm IDs
-            Log.d(TAG, "All real alarms cancelled");
+            // Cancel every alarm the registry knows about
+            List<AlarmRecord> cancelled = scheduler.cancelAll();
+            events.log(EventLog.CANCELLED, 0, cancelled.size());
             
             JSObject result = new JSObject();
             result.put("success", true);
+            result.put("cancelled", cancelled.size());
             call.resolve(result);
             
         } catch (Exception e) {
@@ -183,11 +359,239 @@ public class RealAlarmPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void setSchedulingMode(PluginCall call) {
+        enqueue(call, 0, "setting scheduling mode", () -> setSchedulingModeNow(call));
+    }
+    
+    private void setSchedulingModeNow(PluginCall call) {
+        try {
+            String mode = call.getString("mode", AlarmScheduler.MODE_PER_ALARM);
+            scheduler.setMode(mode);
+            events.log(EventLog.MODE_CHANGED, 0, AlarmScheduler.MODE_NEXT_ALARM.equals(scheduler.getMode()) ? 1 : 0);
+            
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("mode", scheduler.getMode());
+            call.resolve(result);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting scheduling mode", e);
+            call.reject("Error setting scheduling mode: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void setCoalescingWindow(PluginCall call) {
+        enqueue(call, 0, "setting coalescing window", () -> setCoalescingWindowNow(call));
+    }
+    
+    private void setCoalescingWindowNow(PluginCall call) {
+        try {
+            int seconds = call.getInt("seconds", 0);
+            scheduler.setCoalesceWindowMs(seconds * 1000L);
+            
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("seconds", scheduler.getCoalesceWindowMs() / 1000L);
+            call.resolve(result);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error setting coalescing window", e);
+            call.reject("Error setting coalescing window: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getRestoreStats(PluginCall call) {
+        SharedPreferences prefs = getContext().getSharedPreferences(AlarmScheduler.PREFS_NAME, Context.MODE_PRIVATE);
+        JSObject result = new JSObject();
+        result.put("action", prefs.getString(BootReceiver.PREF_RESTORE_ACTION, null));
+        result.put("restoredAt", prefs.getLong(BootReceiver.PREF_RESTORE_AT, 0L));
+        result.put("durationMs", prefs.getLong(BootReceiver.PREF_RESTORE_DURATION_MS, 0L));
+        result.put("restored", prefs.getInt(BootReceiver.PREF_RESTORE_RESTORED, 0));
+        result.put("missed", prefs.getInt(BootReceiver.PREF_RESTORE_MISSED, 0));
+        result.put("dropped", prefs.getInt(BootReceiver.PREF_RESTORE_DROPPED, 0));
+        
+        // Last re-anchoring after a clock or time-zone change
+        JSObject reanchor = new JSObject();
+        reanchor.put("action", prefs.getString(TimeChangeReceiver.PREF_REANCHOR_ACTION, null));
+        reanchor.put("reanchoredAt", prefs.getLong(TimeChangeReceiver.PREF_REANCHOR_AT, 0L));
+        reanchor.put("durationMs", prefs.getLong(TimeChangeReceiver.PREF_REANCHOR_DURATION_MS, 0L));
+        reanchor.put("checked", prefs.getInt(TimeChangeReceiver.PREF_REANCHOR_CHECKED, 0));
+        reanchor.put("changed", prefs.getInt(TimeChangeReceiver.PREF_REANCHOR_CHANGED, 0));
+        result.put("reanchor", reanchor);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getLatencyStats(PluginCall call) {
+        try {
+            LatencyTracker latency = LatencyTracker.get(getContext());
+            
+            // Milliseconds from the scheduled time to each stage; percentiles are bucket upper bounds
+            JSObject stages = new JSObject();
+            for (int stage = 0; stage < LatencyTracker.STAGE_NAMES.length; stage++) {
+                JSArray buckets = new JSArray();
+                for (long count : latency.buckets(stage)) {
+                    buckets.put(count);
+                }
+                JSObject stats = new JSObject();
+                stats.put("count", latency.count(stage));
+                stats.put("meanMs", latency.mean(stage));
+                stats.put("maxMs", latency.max(stage));
+                stats.put("p50Ms", latency.percentile(stage, 0.50));
+                stats.put("p90Ms", latency.percentile(stage, 0.90));
+                stats.put("p99Ms", latency.percentile(stage, 0.99));
+                stats.put("buckets", buckets);
+                stages.put(LatencyTracker.STAGE_NAMES[stage], stats);
+            }
+            JSArray bounds = new JSArray();
+            for (long bound : LatencyTracker.BUCKET_BOUNDS_MS) {
+                bounds.put(bound);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("stages", stages);
+            result.put("bucketBoundsMs", bounds);
+            call.resolve(result);
+            
+            if (call.getBoolean("reset", false)) {
+                latency.reset();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading latency stats", e);
+            call.reject("Error reading latency stats: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getPowerStats(PluginCall call) {
+        try {
+            WakeLockManager wakeLocks = WakeLockManager.get(getContext());
+            
+            // Per purpose: lockHeldMs counts overlapping holds once, heldMs sums the holds themselves
+            JSObject purposes = new JSObject();
+            for (int purpose = 0; purpose < WakeLockManager.PURPOSE_NAMES.length; purpose++) {
+                JSObject stats = usageJson(wakeLocks.usage(purpose));
+                stats.put("lockHeldMs", wakeLocks.lockHeldMs(purpose));
+                stats.put("timeoutMs", WakeLockManager.TIMEOUTS_MS[purpose]);
+                stats.put("openHolds", wakeLocks.openHolds(purpose));
+                purposes.put(WakeLockManager.PURPOSE_NAMES[purpose], stats);
+            }
+            // Alarm id 0 collects queue fires, which wake for several alarms at once
+            JSArray alarms = new JSArray();
+            for (Map.Entry<Integer, WakeLockManager.Usage> entry : wakeLocks.alarmUsage().entrySet()) {
+                JSObject stats = usageJson(entry.getValue());
+                stats.put("alarmId", entry.getKey());
+                alarms.put(stats);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("purposes", purposes);
+            result.put("alarms", alarms);
+            call.resolve(result);
+            
+            if (call.getBoolean("reset", false)) {
+                wakeLocks.reset();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading power stats", e);
+            call.reject("Error reading power stats: " + e.getMessage());
+        }
+    }
+
+    private static JSObject usageJson(WakeLockManager.Usage usage) {
+        JSObject json = new JSObject();
+        json.put("acquires", usage.acquires);
+        json.put("heldMs", usage.heldMs);
+        json.put("maxHeldMs", usage.maxHeldMs);
+        json.put("timeouts", usage.timeouts);
+        return json;
+    }
+
+    @PluginMethod
+    public void getSchedulingStats(PluginCall call) {
+        SchedulingQueue queue = SchedulingQueue.get();
+        
+        // Microseconds over the most recent requests: wait is submit to start, service is the run itself
+        JSObject timings = new JSObject();
+        for (int timing = 0; timing < SchedulingQueue.TIMING_NAMES.length; timing++) {
+            JSObject stats = new JSObject();
+            stats.put("p50Us", queue.percentileUs(timing, 0.50));
+            stats.put("p95Us", queue.percentileUs(timing, 0.95));
+            stats.put("maxUs", queue.maxUs(timing));
+            timings.put(SchedulingQueue.TIMING_NAMES[timing], stats);
+        }
+        
+        JSObject result = new JSObject();
+        result.put("depth", queue.depth());
+        result.put("maxDepth", queue.maxDepth());
+        result.put("capacity", SchedulingQueue.CAPACITY);
+        result.put("submitted", queue.submitted());
+        result.put("completed", queue.completed());
+        result.put("coalesced", queue.coalesced());
+        result.put("rejected", queue.rejected());
+        result.put("timings", timings);
+        call.resolve(result);
+        
+        if (call.getBoolean("reset", false)) {
+            queue.resetStats();
+        }
+    }
+
+    @PluginMethod
+    public void getLaunchStats(PluginCall call) {
+        LaunchCoordinator coordinator = LaunchCoordinator.get(getContext());
+        JSObject result = new JSObject();
+        // Claims are counted per process; suppressed duplicates persist across restarts
+        result.put("claims", coordinator.claims());
+        result.put("suppressedDuplicates", coordinator.suppressed());
+        call.resolve(result);
+        
+        if (call.getBoolean("reset", false)) {
+            coordinator.resetStats();
+        }
+    }
+
+    @PluginMethod
+    public void dumpEventLog(PluginCall call) {
+        try {
+            int limit = call.getInt("limit", EventLog.CAPACITY);
+            
+            // Decoded oldest first; 'total' minus the returned count is how many were overwritten or skipped
+            JSArray list = new JSArray();
+            for (EventLog.Event event : events.snapshot(limit)) {
+                JSObject item = new JSObject();
+                item.put("seq", event.sequence);
+                item.put("time", event.time);
+                item.put("event", event.name());
+                item.put("alarmId", event.alarmId);
+                item.put("arg", event.arg);
+                list.put(item);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("events", list);
+            result.put("total", events.total());
+            result.put("capacity", EventLog.CAPACITY);
+            call.resolve(result);
+            
+            if (call.getBoolean("clear", false)) {
+                events.clear();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error dumping event log", e);
+            call.reject("Error dumping event log: " + e.getMessage());
+        }
+    }
+
     @PluginMethod
     public void ping(PluginCall call) {
         JSObject result = new JSObject();
         result.put("plugin", TAG);
         result.put("androidApi", Build.VERSION.SDK_INT);
+        result.put("schedulingMode", scheduler.getMode());
         result.put("ok", true);
         call.resolve(result);
     }
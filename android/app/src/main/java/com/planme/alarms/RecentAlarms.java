@@ -0,0 +1,97 @@
+package com.planme.alarms;
+
+import android.content.Context;
+
+import com.planme.alarms.core.AlarmRecord;
+import com.planme.alarms.core.RecurrenceRule;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Details of the alarms that fired most recently. Intents carry only an alarm id and fire time;
+// the receiver, ring service and activity look the rest up in AlarmStore, or here once a one-shot
+// has left the store after firing (ringing or relaunched from its notification).
+// Loaded lazily from a small file of AlarmStore-format records and rewritten on every fire.
+final class RecentAlarms {
+    private static final String TAG = "RecentAlarms";
+    private static final String FILE_NAME = "recent_alarms.bin";
+
+    // Enough to cover every alarm of a ringing group plus a few recent fires
+    static final int CAPACITY = 32;
+
+    private static RecentAlarms instance;
+
+    private final RecordFile file;
+    private final Map<Integer, AlarmRecord> recent = new LinkedHashMap<Integer, AlarmRecord>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, AlarmRecord> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+    private boolean loaded;
+
+    static synchronized RecentAlarms get(Context context) {
+        if (instance == null) {
+            instance = new RecentAlarms(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    // The alarm's details at the given fire time, or null when neither the store nor the recent
+    // fires know the alarm, e.g. a delivery that outlived its cancel
+    static AlarmRecord find(Context context, int alarmId, long scheduledTime) {
+        AlarmRecord record = AlarmStore.get(context).get(alarmId);
+        if (record == null) {
+            record = get(context).get(alarmId);
+        }
+        if (record == null) {
+            return null;
+        }
+        return record.scheduledTime == scheduledTime ? record : record.withScheduledTime(scheduledTime);
+    }
+
+    // Like find(), for a session that is already ringing: an alarm nothing is known about any more
+    // is shown with the default title and sound rather than dropped
+    static AlarmRecord resolve(Context context, int alarmId, long scheduledTime) {
+        AlarmRecord record = find(context, alarmId, scheduledTime);
+        if (record == null) {
+            return new AlarmRecord(alarmId, scheduledTime, "Alarm", "Time to wake up!", "red", "alarm_sound", 5,
+                RecurrenceRule.ONCE);
+        }
+        return record;
+    }
+
+    RecentAlarms(File file) {
+        this.file = new RecordFile(file, TAG, "recent alarms");
+    }
+
+    synchronized AlarmRecord get(int alarmId) {
+        load();
+        return recent.get(alarmId);
+    }
+
+    synchronized void putAll(Collection<AlarmRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        load();
+        for (AlarmRecord record : records) {
+            recent.put(record.alarmId, record);
+        }
+        save();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        file.load(recent);
+    }
+
+    private void save() {
+        file.save(recent.values());
+    }
+}
@@ -0,0 +1,68 @@
+package com.planme.alarms;
+
+import android.util.Log;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+// A small file of AlarmStore-format records that is rewritten whole on every change, for the
+// stores that only ever hold a handful of alarms (RecentAlarms, SnoozeStore). Writes go to a
+// temporary file that replaces the old one, so a crash mid-write leaves the previous contents.
+final class RecordFile {
+    private final File file;
+    private final String tag;
+    // What the records are, for log messages
+    private final String what;
+
+    RecordFile(File file, String tag, String what) {
+        this.file = file;
+        this.tag = tag;
+        this.what = what;
+    }
+
+    // Adds the stored records to 'into' by alarm id, in file order; a damaged tail is logged and
+    // the records before it kept
+    void load(Map<Integer, AlarmRecord> into) {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                AlarmRecord record = AlarmRecord.readFrom(in, version);
+                into.put(record.alarmId, record);
+            }
+        } catch (IOException e) {
+            Log.e(tag, "Error loading " + what + ", kept " + into.size(), e);
+        }
+    }
+
+    void save(Collection<AlarmRecord> records) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(AlarmStore.VERSION);
+            out.writeInt(records.size());
+            for (AlarmRecord record : records) {
+                record.writeTo(out);
+            }
+        } catch (IOException e) {
+            Log.e(tag, "Error saving " + what, e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+}
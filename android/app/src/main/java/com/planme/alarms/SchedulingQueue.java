@@ -0,0 +1,207 @@
+package com.planme.alarms;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+// Single writer for the plugin's state-changing calls. Requests run one at a time, in arrival order,
+// on a dedicated thread, so the bridge thread only enqueues and concurrent calls from the web app
+// cannot interleave. The queue is bounded; a full queue refuses the request instead of growing.
+// While a request for an alarm is still waiting, a later request for the same alarm replaces it
+// (a schedule followed by a cancel runs only the cancel). Requests without an alarm id act on the
+// whole set and are barriers: nothing queued before one is replaced by anything queued after it.
+final class SchedulingQueue {
+    private static final String TAG = "SchedulingQueue";
+
+    static final int CAPACITY = 256;
+    // Wait and service times are kept for the most recent requests only
+    static final int SAMPLES = 256;
+
+    // Time from submit until the request started running
+    static final int WAIT = 0;
+    // Time the request ran for
+    static final int SERVICE = 1;
+    static final String[] TIMING_NAMES = {"wait", "service"};
+
+    private static SchedulingQueue instance;
+
+    interface Task {
+        void run();
+
+        // Called instead of run() when a later request for the same alarm replaced this one
+        void superseded();
+    }
+
+    private static final class Request {
+        final int alarmId;
+        final Task task;
+        final long submittedAt;
+
+        Request(int alarmId, Task task, long submittedAt) {
+            this.alarmId = alarmId;
+            this.task = task;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private final Executor executor;
+    private final int capacity;
+    private final LongSupplier clock;
+    private final ArrayDeque<Request> pending = new ArrayDeque<>();
+    // Waiting requests that a later request for the same alarm may still replace
+    private final Map<Integer, Request> replaceable = new HashMap<>();
+    private boolean draining;
+
+    private int maxDepth;
+    private long submitted;
+    private long completed;
+    private long coalesced;
+    private long rejected;
+    // Microseconds, in ring buffers indexed by completed request count
+    private final long[][] samples = new long[TIMING_NAMES.length][SAMPLES];
+
+    static synchronized SchedulingQueue get() {
+        if (instance == null) {
+            Executor executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "PlanMe-Scheduling");
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new SchedulingQueue(executor, CAPACITY, System::nanoTime);
+        }
+        return instance;
+    }
+
+    SchedulingQueue(Executor executor, int capacity, LongSupplier clock) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.clock = clock;
+    }
+
+    // Queues a request for alarmId, or for the whole set when alarmId is 0. Returns false when the
+    // queue is full and the request was not taken.
+    boolean submit(int alarmId, Task task) {
+        Request replaced = null;
+        boolean startDrain;
+        synchronized (this) {
+            submitted++;
+            Request request = new Request(alarmId, task, clock.getAsLong());
+            if (alarmId != 0) {
+                replaced = replaceable.remove(alarmId);
+                if (replaced != null) {
+                    pending.remove(replaced);
+                    coalesced++;
+                }
+            } else {
+                replaceable.clear();
+            }
+            if (pending.size() >= capacity) {
+                rejected++;
+                return false;
+            }
+            pending.add(request);
+            if (alarmId != 0) {
+                replaceable.put(alarmId, request);
+            }
+            maxDepth = Math.max(maxDepth, pending.size());
+            startDrain = !draining;
+            draining = true;
+        }
+        if (replaced != null) {
+            replaced.task.superseded();
+        }
+        if (startDrain) {
+            executor.execute(this::drain);
+        }
+        return true;
+    }
+
+    private void drain() {
+        while (true) {
+            Request request;
+            long start;
+            synchronized (this) {
+                request = pending.poll();
+                if (request == null) {
+                    draining = false;
+                    return;
+                }
+                if (replaceable.get(request.alarmId) == request) {
+                    replaceable.remove(request.alarmId);
+                }
+                start = clock.getAsLong();
+            }
+            try {
+                request.task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error running scheduling request for alarm " + request.alarmId, e);
+            }
+            long end = clock.getAsLong();
+            synchronized (this) {
+                int slot = (int) (completed % SAMPLES);
+                samples[WAIT][slot] = (start - request.submittedAt) / 1000L;
+                samples[SERVICE][slot] = (end - start) / 1000L;
+                completed++;
+            }
+        }
+    }
+
+    synchronized int depth() {
+        return pending.size();
+    }
+
+    synchronized int maxDepth() {
+        return maxDepth;
+    }
+
+    synchronized long submitted() {
+        return submitted;
+    }
+
+    synchronized long completed() {
+        return completed;
+    }
+
+    // Requests replaced by a later request for the same alarm before they ran
+    synchronized long coalesced() {
+        return coalesced;
+    }
+
+    synchronized long rejected() {
+        return rejected;
+    }
+
+    // Over the most recent SAMPLES requests
+    synchronized long percentileUs(int timing, double quantile) {
+        int count = (int) Math.min(completed, SAMPLES);
+        if (count == 0) {
+            return 0L;
+        }
+        long[] sorted = Arrays.copyOf(samples[timing], count);
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(count * quantile) - 1)];
+    }
+
+    synchronized long maxUs(int timing) {
+        int count = (int) Math.min(completed, SAMPLES);
+        long max = 0L;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[timing][i]);
+        }
+        return max;
+    }
+
+    synchronized void resetStats() {
+        maxDepth = pending.size();
+        submitted = 0;
+        completed = 0;
+        coalesced = 0;
+        rejected = 0;
+    }
+}
@@ -0,0 +1,93 @@
+package com.planme.alarms;
+
+import android.content.Context;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pending snoozes, one per alarm, each an AlarmStore-format record whose scheduledTime is the
+// snooze's fire time. A snooze is a fire of its own outside AlarmEngine: it does not move the alarm,
+// and it keeps ringing with the alarm's details after a one-shot has left the store or the device
+// rebooted. Loaded lazily and rewritten on every change; it only ever holds a handful of records.
+final class SnoozeStore {
+    private static final String TAG = "SnoozeStore";
+    private static final String FILE_NAME = "snoozes.bin";
+
+    private static SnoozeStore instance;
+
+    private final RecordFile file;
+    private final Map<Integer, AlarmRecord> snoozes = new LinkedHashMap<>();
+    private boolean loaded;
+
+    static synchronized SnoozeStore get(Context context) {
+        if (instance == null) {
+            instance = new SnoozeStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    SnoozeStore(File file) {
+        this.file = new RecordFile(file, TAG, "snoozes");
+    }
+
+    // Replaces any pending snooze of the same alarm
+    synchronized void put(AlarmRecord snooze) {
+        load();
+        snoozes.put(snooze.alarmId, snooze);
+        save();
+    }
+
+    // Removes and returns the alarm's snooze if it is the one due at 'time'; a stale delivery of a
+    // snooze that was since replaced or cancelled returns null
+    synchronized AlarmRecord take(int alarmId, long time) {
+        load();
+        AlarmRecord snooze = snoozes.get(alarmId);
+        if (snooze == null || snooze.scheduledTime != time) {
+            return null;
+        }
+        snoozes.remove(alarmId);
+        save();
+        return snooze;
+    }
+
+    synchronized AlarmRecord remove(int alarmId) {
+        load();
+        AlarmRecord snooze = snoozes.remove(alarmId);
+        if (snooze != null) {
+            save();
+        }
+        return snooze;
+    }
+
+    synchronized List<AlarmRecord> removeAll() {
+        load();
+        List<AlarmRecord> removed = new ArrayList<>(snoozes.values());
+        if (!removed.isEmpty()) {
+            snoozes.clear();
+            save();
+        }
+        return removed;
+    }
+
+    synchronized List<AlarmRecord> getAll() {
+        load();
+        return new ArrayList<>(snoozes.values());
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        file.load(snoozes);
+    }
+
+    private void save() {
+        file.save(snoozes.values());
+    }
+}
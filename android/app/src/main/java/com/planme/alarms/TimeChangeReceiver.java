@@ -0,0 +1,61 @@
+package com.planme.alarms;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.planme.alarms.core.AlarmEngine;
+
+import java.time.ZoneId;
+
+// Stored alarms are absolute times computed for the zone they were scheduled in. After the user
+// sets the clock or changes zone this moves them back onto their local wall-clock time in one pass,
+// re-registering only the alarms that moved. Runs off the main thread under goAsync().
+public class TimeChangeReceiver extends BroadcastReceiver {
+    private static final String TAG = "TimeChangeReceiver";
+
+    static final String PREF_REANCHOR_ACTION = "reanchorAction";
+    static final String PREF_REANCHOR_AT = "reanchorAt";
+    static final String PREF_REANCHOR_DURATION_MS = "reanchorDurationMs";
+    static final String PREF_REANCHOR_CHECKED = "reanchorChecked";
+    static final String PREF_REANCHOR_CHANGED = "reanchorChanged";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!Intent.ACTION_TIME_CHANGED.equals(action) && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            return;
+        }
+        // The process default zone can lag the broadcast; the extra names the new zone
+        String zoneId = intent.getStringExtra(Intent.EXTRA_TIMEZONE);
+
+        Context appContext = context.getApplicationContext();
+        PendingResult pendingResult = goAsync();
+        AlarmExecutor.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                ZoneId zone = zoneId != null ? ZoneId.of(zoneId) : ZoneId.systemDefault();
+                AlarmEngine.ReanchorResult result = AlarmScheduler.get(appContext).reanchor(zone, System.currentTimeMillis());
+                long duration = SystemClock.elapsedRealtime() - start;
+                EventLog.get(appContext).log(EventLog.REANCHORED, 0, result.changed);
+
+                appContext.getSharedPreferences(AlarmScheduler.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putString(PREF_REANCHOR_ACTION, action)
+                    .putLong(PREF_REANCHOR_AT, System.currentTimeMillis())
+                    .putLong(PREF_REANCHOR_DURATION_MS, duration)
+                    .putInt(PREF_REANCHOR_CHECKED, result.checked)
+                    .putInt(PREF_REANCHOR_CHANGED, result.changed)
+                    .apply();
+
+                Log.d(TAG, "Re-anchored " + result.changed + " of " + result.checked + " alarms to " + zone
+                    + " in " + duration + "ms");
+            } catch (Exception e) {
+                Log.e(TAG, "Error re-anchoring alarms", e);
+            } finally {
+                pendingResult.finish();
+            }
+        });
+    }
+}
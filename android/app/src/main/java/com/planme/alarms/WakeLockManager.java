@@ -0,0 +1,320 @@
+package com.planme.alarms;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Owner of every wake lock the app takes. Callers open a Hold for a purpose; the holds of one
+// purpose share a single PARTIAL_WAKE_LOCK that is released with the last hold and in any case by
+// the purpose's timeout, so no path keeps the CPU awake unbounded. The screen is kept on by window
+// flags on AlarmActivity, never by a wake lock. Acquire counts and held time are kept per purpose
+// and per alarm and persisted whenever the last hold closes, for getPowerStats.
+final class WakeLockManager {
+    private static final String TAG = "WakeLockManager";
+    private static final String FILE_NAME = "power.bin";
+    private static final int VERSION = 1;
+
+    // Receiver work, from the broadcast until the ring service is in the foreground
+    static final int FIRE = 0;
+    // A ringing session, until it is snoozed, dismissed or times out
+    static final int RING = 1;
+    static final String[] PURPOSE_NAMES = {"fire", "ring"};
+    static final long[] TIMEOUTS_MS = {10_000L, AlarmRingService.RING_TIMEOUT_MS + 5000L};
+
+    // Per-alarm usage is kept for the most recently active alarms only
+    static final int MAX_TRACKED_ALARMS = 64;
+
+    private static WakeLockManager instance;
+
+    interface Lock {
+        void acquire(long timeoutMs);
+
+        void release();
+    }
+
+    static final class Usage {
+        long acquires;
+        long heldMs;
+        // Longest single hold; bounded by the purpose's timeout
+        long maxHeldMs;
+        // Holds that were still open when their timeout released the lock
+        long timeouts;
+
+        Usage copy() {
+            Usage usage = new Usage();
+            usage.acquires = acquires;
+            usage.heldMs = heldMs;
+            usage.maxHeldMs = maxHeldMs;
+            usage.timeouts = timeouts;
+            return usage;
+        }
+    }
+
+    // One caller's claim on a purpose's lock; closing it more than once is harmless
+    final class Hold implements AutoCloseable {
+        final int purpose;
+        final int alarmId;
+        final long start;
+        private boolean closed;
+
+        private Hold(int purpose, int alarmId, long start) {
+            this.purpose = purpose;
+            this.alarmId = alarmId;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    private final File file;
+    private final Lock[] locks;
+    private final LongSupplier clock;
+    private final int[] openHolds = new int[PURPOSE_NAMES.length];
+    // Start of the lock's current held stretch, or -1 while released
+    private final long[] lockedAt = new long[PURPOSE_NAMES.length];
+    private final long[] expiresAt = new long[PURPOSE_NAMES.length];
+    private final Usage[] purposes = new Usage[PURPOSE_NAMES.length];
+    // Held time of the shared lock itself, which overlapping holds count only once
+    private final long[] lockHeldMs = new long[PURPOSE_NAMES.length];
+    private final Map<Integer, Usage> alarms = new LinkedHashMap<Integer, Usage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Usage> eldest) {
+            return size() > MAX_TRACKED_ALARMS;
+        }
+    };
+
+    static synchronized WakeLockManager get(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            PowerManager powerManager = (PowerManager) appContext.getSystemService(Context.POWER_SERVICE);
+            Lock[] locks = new Lock[PURPOSE_NAMES.length];
+            for (int purpose = 0; purpose < locks.length; purpose++) {
+                PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
+                    "PlanMe:" + PURPOSE_NAMES[purpose]);
+                // Counted here, so one release always lets go and a re-acquire re-arms the timeout
+                wakeLock.setReferenceCounted(false);
+                locks[purpose] = new Lock() {
+                    @Override
+                    public void acquire(long timeoutMs) {
+                        wakeLock.acquire(timeoutMs);
+                    }
+
+                    @Override
+                    public void release() {
+                        if (wakeLock.isHeld()) {
+                            wakeLock.release();
+                        }
+                    }
+                };
+            }
+            instance = new WakeLockManager(new File(appContext.getFilesDir(), FILE_NAME), locks,
+                SystemClock::elapsedRealtime);
+        }
+        return instance;
+    }
+
+    WakeLockManager(File file, Lock[] locks, LongSupplier clock) {
+        this.file = file;
+        this.locks = locks;
+        this.clock = clock;
+        for (int purpose = 0; purpose < purposes.length; purpose++) {
+            purposes[purpose] = new Usage();
+            lockedAt[purpose] = -1;
+        }
+        load();
+    }
+
+    // Takes a hold on the purpose's lock on behalf of an alarm (0 when the fire has no single alarm)
+    synchronized Hold acquire(int purpose, int alarmId) {
+        long now = clock.getAsLong();
+        if (lockedAt[purpose] >= 0 && now >= expiresAt[purpose]) {
+            // The timeout released the lock under the open holds
+            endStretch(purpose, expiresAt[purpose]);
+        }
+        if (lockedAt[purpose] < 0) {
+            lockedAt[purpose] = now;
+        }
+        // Re-arming on every hold keeps the lock for at least the newest hold's timeout
+        expiresAt[purpose] = now + TIMEOUTS_MS[purpose];
+        locks[purpose].acquire(TIMEOUTS_MS[purpose]);
+        openHolds[purpose]++;
+        purposes[purpose].acquires++;
+        alarmUsage(alarmId).acquires++;
+        return new Hold(purpose, alarmId, now);
+    }
+
+    synchronized int openHolds(int purpose) {
+        return openHolds[purpose];
+    }
+
+    synchronized Usage usage(int purpose) {
+        return purposes[purpose].copy();
+    }
+
+    // Milliseconds the purpose's lock was actually held, including the current stretch
+    synchronized long lockHeldMs(int purpose) {
+        long held = lockHeldMs[purpose];
+        if (lockedAt[purpose] >= 0) {
+            held += Math.min(clock.getAsLong(), expiresAt[purpose]) - lockedAt[purpose];
+        }
+        return held;
+    }
+
+    // Usage per alarm id, most recently active last
+    synchronized Map<Integer, Usage> alarmUsage() {
+        Map<Integer, Usage> copy = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Usage> entry : alarms.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    synchronized void reset() {
+        for (int purpose = 0; purpose < purposes.length; purpose++) {
+            purposes[purpose] = new Usage();
+            lockHeldMs[purpose] = 0;
+            if (lockedAt[purpose] >= 0) {
+                lockedAt[purpose] = clock.getAsLong();
+            }
+        }
+        alarms.clear();
+        save();
+    }
+
+    private synchronized void release(Hold hold) {
+        if (hold.closed) {
+            return;
+        }
+        hold.closed = true;
+        int purpose = hold.purpose;
+        long now = clock.getAsLong();
+        long timeout = TIMEOUTS_MS[purpose];
+        long held = Math.min(now - hold.start, timeout);
+        boolean timedOut = now - hold.start >= timeout;
+        account(purposes[purpose], held, timedOut);
+        account(alarmUsage(hold.alarmId), held, timedOut);
+        if (--openHolds[purpose] > 0) {
+            return;
+        }
+        locks[purpose].release();
+        endStretch(purpose, Math.min(now, expiresAt[purpose]));
+        if (idle()) {
+            save();
+        }
+    }
+
+    private static void account(Usage usage, long held, boolean timedOut) {
+        usage.heldMs += held;
+        usage.maxHeldMs = Math.max(usage.maxHeldMs, held);
+        if (timedOut) {
+            usage.timeouts++;
+        }
+    }
+
+    private void endStretch(int purpose, long end) {
+        lockHeldMs[purpose] += Math.max(0L, end - lockedAt[purpose]);
+        lockedAt[purpose] = -1;
+    }
+
+    private boolean idle() {
+        for (int holds : openHolds) {
+            if (holds > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Usage alarmUsage(int alarmId) {
+        Usage usage = alarms.get(alarmId);
+        if (usage == null) {
+            usage = new Usage();
+            alarms.put(alarmId, usage);
+        }
+        return usage;
+    }
+
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(PURPOSE_NAMES.length);
+            for (int purpose = 0; purpose < PURPOSE_NAMES.length; purpose++) {
+                out.writeLong(lockHeldMs[purpose]);
+                write(out, purposes[purpose]);
+            }
+            out.writeInt(alarms.size());
+            for (Map.Entry<Integer, Usage> entry : alarms.entrySet()) {
+                out.writeInt(entry.getKey());
+                write(out, entry.getValue());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving power stats", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            int stored = in.readInt();
+            for (int purpose = 0; purpose < stored; purpose++) {
+                long held = in.readLong();
+                Usage usage = read(in);
+                // Purposes are only ever appended
+                if (purpose < PURPOSE_NAMES.length) {
+                    lockHeldMs[purpose] = held;
+                    purposes[purpose] = usage;
+                }
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int alarmId = in.readInt();
+                alarms.put(alarmId, read(in));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading power stats", e);
+        }
+    }
+
+    private static void write(DataOutputStream out, Usage usage) throws IOException {
+        out.writeLong(usage.acquires);
+        out.writeLong(usage.heldMs);
+        out.writeLong(usage.maxHeldMs);
+        out.writeLong(usage.timeouts);
+    }
+
+    private static Usage read(DataInputStream in) throws IOException {
+        Usage usage = new Usage();
+        usage.acquires = in.readLong();
+        usage.heldMs = in.readLong();
+        usage.maxHeldMs = in.readLong();
+        usage.timeouts = in.readLong();
+        return usage;
+    }
+}
@@ -0,0 +1,252 @@
+package com.planme.alarms;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.AlarmManager;
+import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.getcapacitor.Bridge;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAlarmManager;
+import org.robolectric.shadows.ShadowBroadcastPendingResult;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the plugin and receiver with thousands of alarms registered. What is asserted is the work
+// each call does: one AlarmManager registration and one appended store record per schedule, and one
+// alarm leaving the store per fire, so a change that re-registers or rewrites the whole alarm set
+// fails the unit test task. Wall-clock times depend on the host, so their 95th percentiles are only
+// reported. Plugin calls are timed from the call until the scheduling queue resolves it, and each
+// is awaited before the next so the queue never fills.
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AlarmPerformanceTest {
+    private static final int ALARMS = 2000;
+    private static final int FIRES = 200;
+    private static final int WARMUP = 200;
+
+    // One PUT record of the alarms scheduled here is far smaller; a rewrite of the set is far larger
+    private static final long MAX_RECORD_BYTES = 512;
+
+    private Context context;
+    private AlarmManager alarmManager;
+    private RealAlarmPlugin plugin;
+    private File storeLog;
+    private long baseTime;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+        resetSingletons();
+        AlarmScheduler.get(context).cancelAll();
+        storeLog = new File(context.getFilesDir(), "alarms.log");
+
+        Bridge bridge = mock(Bridge.class);
+        when(bridge.getContext()).thenReturn(context);
+        plugin = new RealAlarmPlugin();
+        plugin.setBridge(bridge);
+        plugin.load();
+        baseTime = System.currentTimeMillis() + 60L * 60 * 1000;
+    }
+
+    @After
+    public void tearDown() {
+        plugin.handleOnDestroy();
+        AlarmScheduler.get(context).cancelAll();
+    }
+
+    // Binds the scheduler and its store to this test's Context instead of the first test's
+    static void resetSingletons() {
+        ReflectionHelpers.setStaticField(AlarmScheduler.class, "instance", null);
+        ReflectionHelpers.setStaticField(AlarmStore.class, "instance", null);
+    }
+
+    @Test
+    public void scheduleAndCancelTouchOnlyTheirOwnAlarm() throws Exception {
+        warmUp();
+        long[] schedule = new long[ALARMS];
+        for (int i = 0; i < ALARMS; i++) {
+            long logBefore = storeLog.length();
+            schedule[i] = schedule(i + 1, baseTime + i * 60_000L);
+            assertEquals(i + 1, registrations());
+            assertAppendedOneRecord("scheduleRealAlarm", logBefore);
+        }
+
+        long[] cancel = new long[ALARMS];
+        for (int i = 0; i < ALARMS; i++) {
+            long logBefore = storeLog.length();
+            cancel[i] = cancel(i + 1);
+            assertEquals(ALARMS - i - 1, registrations());
+            assertAppendedAtMostOneRecord("cancelRealAlarm", logBefore);
+        }
+
+        report("scheduleRealAlarm", schedule);
+        report("cancelRealAlarm", cancel);
+    }
+
+    @Test
+    public void queueModeKeepsOneRegistration() throws Exception {
+        AlarmScheduler.get(context).setMode(AlarmScheduler.MODE_NEXT_ALARM);
+        warmUp();
+        long[] schedule = new long[ALARMS];
+        for (int i = 0; i < ALARMS; i++) {
+            long logBefore = storeLog.length();
+            // Reverse order, so every call moves the single registration earlier
+            schedule[i] = schedule(i + 1, baseTime + (ALARMS - i) * 60_000L);
+            assertEquals(1, registrations());
+            assertAppendedOneRecord("scheduleRealAlarm (queue mode)", logBefore);
+        }
+
+        long[] cancel = new long[ALARMS];
+        for (int i = 0; i < ALARMS; i++) {
+            long logBefore = storeLog.length();
+            cancel[i] = cancel(ALARMS - i);
+            assertEquals(i == ALARMS - 1 ? 0 : 1, registrations());
+            assertAppendedAtMostOneRecord("cancelRealAlarm (queue mode)", logBefore);
+        }
+
+        report("scheduleRealAlarm (queue mode)", schedule);
+        report("cancelRealAlarm (queue mode)", cancel);
+    }
+
+    @Test
+    public void eachFireTakesOnlyItsOwnAlarm() throws Exception {
+        for (int i = 0; i < ALARMS; i++) {
+            schedule(i + 1, baseTime + i * 60_000L);
+        }
+        // The intents AlarmManager would deliver, as registered through the plugin
+        List<Intent> intents = new ArrayList<>();
+        for (ShadowAlarmManager.ScheduledAlarm alarm : shadowOf(alarmManager).getScheduledAlarms()) {
+            intents.add(shadowOf(alarm.getOperation()).getSavedIntent());
+        }
+        assertEquals(ALARMS, intents.size());
+
+        for (int i = 0; i < WARMUP / 10; i++) {
+            fire(intents.get(ALARMS - 1 - i));
+        }
+        AlarmStore store = AlarmStore.get(context);
+        long[] receive = new long[FIRES];
+        long[] fire = new long[FIRES];
+        for (int i = 0; i < FIRES; i++) {
+            int storedBefore = store.size();
+            long[] timing = fire(intents.get(i));
+            receive[i] = timing[0];
+            fire[i] = timing[1];
+            // A one-shot leaves the store when it fires, and nothing else does
+            assertEquals(storedBefore - 1, store.size());
+            Intent started = shadowOf((Application) context).getNextStartedActivity();
+            assertNotNull("fire " + i + " launched no activity", started);
+            assertEquals(AlarmActivity.class.getName(), started.getComponent().getClassName());
+        }
+
+        report("AlarmReceiver.onReceive", receive);
+        report("alarm fire", fire);
+    }
+
+    // Gets class loading and JIT out of the measured calls
+    private void warmUp() throws InterruptedException {
+        for (int i = 0; i < WARMUP; i++) {
+            schedule(ALARMS + 1 + i, baseTime + i * 1000L);
+            cancel(ALARMS + 1 + i);
+        }
+    }
+
+    private long schedule(int alarmId, long time) throws InterruptedException {
+        JSObject data = new JSObject();
+        data.put("alarmId", alarmId);
+        data.put("scheduledTime", time);
+        data.put("title", "Alarm " + alarmId);
+        PluginCall call = mock(PluginCall.class);
+        when(call.getData()).thenReturn(data);
+        CountDownLatch resolved = resolveLatch(call);
+
+        long start = System.nanoTime();
+        plugin.scheduleRealAlarm(call);
+        assertTrue("scheduleRealAlarm did not resolve", resolved.await(5, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+
+    private long cancel(int alarmId) throws InterruptedException {
+        PluginCall call = mock(PluginCall.class);
+        when(call.getInt("alarmId", 0)).thenReturn(alarmId);
+        CountDownLatch resolved = resolveLatch(call);
+
+        long start = System.nanoTime();
+        plugin.cancelRealAlarm(call);
+        assertTrue("cancelRealAlarm did not resolve", resolved.await(5, TimeUnit.SECONDS));
+        return System.nanoTime() - start;
+    }
+
+    // Counts down when the scheduling queue resolves the call
+    private static CountDownLatch resolveLatch(PluginCall call) {
+        CountDownLatch resolved = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            resolved.countDown();
+            return null;
+        }).when(call).resolve(any(JSObject.class));
+        return resolved;
+    }
+
+    // Returns {time spent in onReceive, time until the broadcast finished}
+    private long[] fire(Intent intent) throws Exception {
+        AlarmReceiver receiver = new AlarmReceiver();
+        BroadcastReceiver.PendingResult result = ShadowBroadcastPendingResult.create(0, null, null, false);
+        ReflectionHelpers.callInstanceMethod(receiver, "setPendingResult",
+            ClassParameter.from(BroadcastReceiver.PendingResult.class, result));
+
+        long start = System.nanoTime();
+        receiver.onReceive(context, intent);
+        long received = System.nanoTime() - start;
+        ShadowBroadcastPendingResult.getFuture(result).get(5, TimeUnit.SECONDS);
+        return new long[]{received, System.nanoTime() - start};
+    }
+
+    private int registrations() {
+        return shadowOf(alarmManager).getScheduledAlarms().size();
+    }
+
+    private void assertAppendedOneRecord(String what, long logBefore) {
+        long grown = storeLog.length() - logBefore;
+        assertTrue(what + " grew the alarm log by " + grown + " bytes", grown > 0 && grown <= MAX_RECORD_BYTES);
+    }
+
+    // A call may also compact the log, which shrinks it
+    private void assertAppendedAtMostOneRecord(String what, long logBefore) {
+        long grown = storeLog.length() - logBefore;
+        assertTrue(what + " grew the alarm log by " + grown + " bytes", grown <= MAX_RECORD_BYTES);
+    }
+
+    private static void report(String what, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        long p95 = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+        System.out.printf("%s p95 %.3fms (max %.3fms)%n", what, p95 / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+}
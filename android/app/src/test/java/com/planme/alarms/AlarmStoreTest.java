@@ -0,0 +1,70 @@
+package com.planme.alarms;
+
+import static com.planme.alarms.TestAlarms.alarm;
+import static org.junit.Assert.*;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+public class AlarmStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rangeReturnsAlarmsInTimeOrderWithinBounds() {
+        AlarmStore store = new AlarmStore(new File(folder.getRoot(), "alarms.log"));
+        store.putAll(Arrays.asList(alarm(1, 300L), alarm(2, 100L), alarm(3, 200L), alarm(4, 400L)));
+
+        List<AlarmRecord> page = store.range(100L, 300L, 10, Long.MIN_VALUE, 0);
+        assertEquals(3, page.size());
+        assertEquals(2, page.get(0).alarmId);
+        assertEquals(3, page.get(1).alarmId);
+        assertEquals(1, page.get(2).alarmId);
+    }
+
+    @Test
+    public void cursorBeforeTheRangeStartsAtFrom() {
+        AlarmStore store = new AlarmStore(new File(folder.getRoot(), "alarms.log"));
+        store.putAll(Arrays.asList(alarm(1, 100L), alarm(2, 200L), alarm(3, 300L)));
+
+        List<AlarmRecord> page = store.range(150L, Long.MAX_VALUE, 10, 100L, 1);
+        assertEquals(2, page.size());
+        assertEquals(2, page.get(0).alarmId);
+        assertEquals(3, page.get(1).alarmId);
+    }
+
+    @Test
+    public void pagesContinueAfterTheCursorIncludingTies() {
+        AlarmStore store = new AlarmStore(new File(folder.getRoot(), "alarms.log"));
+        store.putAll(Arrays.asList(alarm(1, 100L), alarm(2, 100L), alarm(3, 100L), alarm(4, 200L)));
+
+        List<AlarmRecord> first = store.range(0L, Long.MAX_VALUE, 2, Long.MIN_VALUE, 0);
+        assertEquals(2, first.size());
+        AlarmRecord last = first.get(1);
+        List<AlarmRecord> second = store.range(0L, Long.MAX_VALUE, 2, last.scheduledTime, last.alarmId);
+        assertEquals(3, second.get(0).alarmId);
+        assertEquals(4, second.get(1).alarmId);
+    }
+
+    @Test
+    public void indexFollowsUpdatesAndRemovals() {
+        File file = new File(folder.getRoot(), "alarms.log");
+        AlarmStore store = new AlarmStore(file);
+        store.put(alarm(1, 100L));
+        store.put(alarm(2, 200L));
+        store.put(alarm(1, 300L));
+        store.remove(2);
+
+        List<AlarmRecord> all = store.range(0L, Long.MAX_VALUE, 10, Long.MIN_VALUE, 0);
+        assertEquals(1, all.size());
+        assertEquals(300L, all.get(0).scheduledTime);
+    }
+}
@@ -0,0 +1,41 @@
+package com.planme.alarms;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+public class ClockFormatterTest {
+
+    private static final String[] AM_PM = {"AM", "PM"};
+
+    private static String format(ClockFormatter clock, long time) {
+        return new String(clock.buffer(), 0, clock.format(time));
+    }
+
+    @Test
+    public void formatsTwelveAndTwentyFourHourTimeInTheZone() {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        ClockFormatter twelve = new ClockFormatter(utc, false, AM_PM);
+        ClockFormatter twentyFour = new ClockFormatter(utc, true, AM_PM);
+        long midnight = 1_800_000_000_000L / 86_400_000L * 86_400_000L;
+
+        assertEquals("12:00 AM", format(twelve, midnight));
+        assertEquals("9:05 AM", format(twelve, midnight + (9 * 60 + 5) * 60_000L));
+        assertEquals("12:30 PM", format(twelve, midnight + (12 * 60 + 30) * 60_000L));
+        assertEquals("11:59 PM", format(twelve, midnight + (23 * 60 + 59) * 60_000L + 59_999L));
+        assertEquals("00:00", format(twentyFour, midnight));
+        assertEquals("17:45", format(twentyFour, midnight + (17 * 60 + 45) * 60_000L));
+
+        ClockFormatter kolkata = new ClockFormatter(TimeZone.getTimeZone("Asia/Kolkata"), true, AM_PM);
+        assertEquals("05:30", format(kolkata, midnight));
+    }
+
+    @Test
+    public void nextMinuteIsTheFollowingBoundary() {
+        assertEquals(120_000L, ClockFormatter.nextMinute(60_000L));
+        assertEquals(120_000L, ClockFormatter.nextMinute(119_999L));
+        assertEquals(0L, ClockFormatter.nextMinute(-1L));
+    }
+}
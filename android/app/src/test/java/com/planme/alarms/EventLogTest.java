@@ -0,0 +1,48 @@
+package com.planme.alarms;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EventLogTest {
+
+    private static EventLog newLog() {
+        return new EventLog(ByteBuffer.allocate(EventLog.HEADER_BYTES + EventLog.CAPACITY * EventLog.RECORD_BYTES), false);
+    }
+
+    @Test
+    public void decodesEventsOldestFirst() {
+        EventLog log = newLog();
+        log.log(EventLog.RECEIVER_TRIGGERED, 7);
+        log.log(EventLog.ALARM_LAUNCHED, 7, 1234L);
+
+        List<EventLog.Event> events = log.snapshot(10);
+        assertEquals(2, events.size());
+        assertEquals("receiverTriggered", events.get(0).name());
+        assertEquals(7, events.get(1).alarmId);
+        assertEquals(1234L, events.get(1).arg);
+        assertEquals(1L, events.get(1).sequence);
+    }
+
+    @Test
+    public void ringKeepsOnlyTheNewestEvents() {
+        EventLog log = newLog();
+        int written = EventLog.CAPACITY + 5;
+        for (int i = 0; i < written; i++) {
+            log.log(EventLog.SCHEDULED, i);
+        }
+
+        List<EventLog.Event> events = log.snapshot(Integer.MAX_VALUE);
+        assertEquals(EventLog.CAPACITY, events.size());
+        assertEquals(5, events.get(0).alarmId);
+        assertEquals(written - 1, events.get(events.size() - 1).alarmId);
+        assertEquals(written, log.total());
+        assertEquals(3, log.snapshot(3).size());
+
+        log.clear();
+        assertTrue(log.snapshot(10).isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package com.planme.alarms;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PluginEventQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void eventsQueuedWithoutSinkSurviveARestartAndFlushInOrder() throws Exception {
+        File file = new File(folder.getRoot(), "events.bin");
+        PluginEventQueue queue = new PluginEventQueue(file);
+        queue.post(PluginEventQueue.FIRED, 1, 100L);
+        queue.post(PluginEventQueue.SNOOZED, 1, 100L, 5);
+        queue.post(PluginEventQueue.DISMISSED, 2, 200L);
+
+        PluginEventQueue restarted = new PluginEventQueue(file);
+        assertEquals(3, restarted.pendingCount());
+        List<PluginEventQueue.Event> delivered = new ArrayList<>();
+        List<Boolean> replayed = new ArrayList<>();
+        restarted.attach((event, replay) -> {
+            delivered.add(event);
+            replayed.add(replay);
+        });
+
+        assertEquals(3, delivered.size());
+        assertEquals("alarmFired", delivered.get(0).name());
+        assertEquals("alarmSnoozed", delivered.get(1).name());
+        assertEquals(5, delivered.get(1).arg);
+        assertEquals(2, delivered.get(2).alarmId);
+        assertFalse(replayed.contains(false));
+        assertEquals(0, restarted.pendingCount());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void attachedSinkReceivesEventsDirectly() {
+        PluginEventQueue queue = new PluginEventQueue(new File(folder.getRoot(), "events.bin"));
+        List<Boolean> replayed = new ArrayList<>();
+        PluginEventQueue.Sink sink = (event, replay) -> replayed.add(replay);
+        queue.attach(sink);
+        queue.post(PluginEventQueue.FIRED, 1, 100L);
+        queue.detach(sink);
+        queue.post(PluginEventQueue.FIRED, 2, 200L);
+
+        assertEquals(1, replayed.size());
+        assertFalse(replayed.get(0));
+        assertEquals(1, queue.pendingCount());
+    }
+
+    @Test
+    public void dropsOldestBeyondCapacity() {
+        File file = new File(folder.getRoot(), "events.bin");
+        PluginEventQueue queue = new PluginEventQueue(file);
+        for (int i = 0; i <= PluginEventQueue.MAX_PENDING; i++) {
+            queue.post(PluginEventQueue.FIRED, i, i);
+        }
+        PluginEventQueue restarted = new PluginEventQueue(file);
+        assertEquals(PluginEventQueue.MAX_PENDING, restarted.pendingCount());
+        List<Integer> ids = new ArrayList<>();
+        restarted.attach((event, replay) -> ids.add(event.alarmId));
+        assertEquals(1, (int) ids.get(0));
+    }
+}
@@ -0,0 +1,41 @@
+package com.planme.alarms;
+
+import static com.planme.alarms.TestAlarms.alarm;
+import static org.junit.Assert.*;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RecentAlarmsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void firedAlarmsSurviveARestartUpToCapacity() {
+        File file = new File(folder.getRoot(), "recent.bin");
+        RecentAlarms recent = new RecentAlarms(file);
+        List<AlarmRecord> fired = new ArrayList<>();
+        for (int i = 1; i <= RecentAlarms.CAPACITY + 2; i++) {
+            fired.add(alarm(i, 1000L * i));
+        }
+        recent.putAll(fired.subList(0, 2));
+        recent.putAll(fired.subList(2, fired.size()));
+        recent.putAll(Collections.singletonList(alarm(3, 3000L)));
+
+        RecentAlarms restarted = new RecentAlarms(file);
+        assertNull(restarted.get(1));
+        assertNull(restarted.get(2));
+        assertEquals("Alarm 3", restarted.get(3).title);
+        assertEquals(3000L, restarted.get(3).scheduledTime);
+        assertNotNull(restarted.get(RecentAlarms.CAPACITY + 2));
+    }
+}
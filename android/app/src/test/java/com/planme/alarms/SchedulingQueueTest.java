@@ -0,0 +1,114 @@
+package com.planme.alarms;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class SchedulingQueueTest {
+
+    // Runs the drain only when the test asks, so requests pile up as they would behind a slow one
+    private static final class ManualExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static SchedulingQueue.Task task(List<String> log, String name) {
+        return new SchedulingQueue.Task() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+
+            @Override
+            public void superseded() {
+                log.add(name + " superseded");
+            }
+        };
+    }
+
+    @Test
+    public void laterRequestForTheSameAlarmReplacesTheWaitingOne() {
+        ManualExecutor executor = new ManualExecutor();
+        SchedulingQueue queue = new SchedulingQueue(executor, 16, () -> 0L);
+        List<String> log = new ArrayList<>();
+        queue.submit(1, task(log, "schedule 1"));
+        queue.submit(2, task(log, "schedule 2"));
+        queue.submit(1, task(log, "cancel 1"));
+        assertEquals(2, queue.depth());
+
+        executor.runAll();
+        assertEquals(Arrays.asList("schedule 1 superseded", "schedule 2", "cancel 1"), log);
+        assertEquals(1, queue.coalesced());
+        assertEquals(2, queue.completed());
+    }
+
+    @Test
+    public void wholeSetRequestsAreBarriers() {
+        ManualExecutor executor = new ManualExecutor();
+        SchedulingQueue queue = new SchedulingQueue(executor, 16, () -> 0L);
+        List<String> log = new ArrayList<>();
+        queue.submit(1, task(log, "schedule 1"));
+        queue.submit(0, task(log, "sync"));
+        queue.submit(1, task(log, "cancel 1"));
+
+        executor.runAll();
+        assertEquals(Arrays.asList("schedule 1", "sync", "cancel 1"), log);
+        assertEquals(0, queue.coalesced());
+    }
+
+    @Test
+    public void fullQueueRefusesNewRequests() {
+        ManualExecutor executor = new ManualExecutor();
+        SchedulingQueue queue = new SchedulingQueue(executor, 2, () -> 0L);
+        List<String> log = new ArrayList<>();
+        assertTrue(queue.submit(1, task(log, "a")));
+        assertTrue(queue.submit(2, task(log, "b")));
+        assertFalse(queue.submit(3, task(log, "c")));
+        // Replacing a waiting request needs no extra room
+        assertTrue(queue.submit(2, task(log, "b again")));
+        assertEquals(1, queue.rejected());
+        assertEquals(2, queue.maxDepth());
+
+        executor.runAll();
+        assertEquals(Arrays.asList("b superseded", "a", "b again"), log);
+        assertEquals(0, queue.depth());
+    }
+
+    @Test
+    public void waitAndServiceTimesAreMeasured() {
+        ManualExecutor executor = new ManualExecutor();
+        long[] now = {0L};
+        SchedulingQueue queue = new SchedulingQueue(executor, 16, () -> now[0]);
+        queue.submit(1, new SchedulingQueue.Task() {
+            @Override
+            public void run() {
+                now[0] += 3_000_000L;
+            }
+
+            @Override
+            public void superseded() {
+            }
+        });
+        now[0] = 2_000_000L;
+
+        executor.runAll();
+        assertEquals(2000L, queue.percentileUs(SchedulingQueue.WAIT, 0.95));
+        assertEquals(3000L, queue.percentileUs(SchedulingQueue.SERVICE, 0.95));
+        assertEquals(3000L, queue.maxUs(SchedulingQueue.SERVICE));
+    }
+}
@@ -0,0 +1,37 @@
+package com.planme.alarms;
+
+import static com.planme.alarms.TestAlarms.alarm;
+import static org.junit.Assert.*;
+
+import com.planme.alarms.core.AlarmRecord;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class SnoozeStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snoozesSurviveARestartAndAreTakenOnce() {
+        File file = new File(folder.getRoot(), "snoozes.bin");
+        SnoozeStore snoozes = new SnoozeStore(file);
+        snoozes.put(alarm(1, 1000L));
+        snoozes.put(alarm(2, 2000L));
+        // A second snooze of the same alarm replaces the first
+        snoozes.put(alarm(1, 1500L));
+
+        SnoozeStore restarted = new SnoozeStore(file);
+        assertEquals(2, restarted.getAll().size());
+        assertNull(restarted.take(1, 1000L));
+        assertEquals("Alarm 1", restarted.take(1, 1500L).title);
+        assertNull(restarted.take(1, 1500L));
+
+        assertEquals(1, new SnoozeStore(file).removeAll().size());
+        assertTrue(new SnoozeStore(file).getAll().isEmpty());
+    }
+}
@@ -0,0 +1,15 @@
+package com.planme.alarms;
+
+import com.planme.alarms.core.AlarmRecord;
+import com.planme.alarms.core.RecurrenceRule;
+
+// Alarm records for the store and queue tests
+final class TestAlarms {
+    private TestAlarms() {
+    }
+
+    // A one-shot alarm with the default sound and details
+    static AlarmRecord alarm(int alarmId, long time) {
+        return new AlarmRecord(alarmId, time, "Alarm " + alarmId, "Body", "red", "alarm_sound", 5, RecurrenceRule.ONCE);
+    }
+}
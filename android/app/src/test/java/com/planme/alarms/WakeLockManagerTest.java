@@ -0,0 +1,87 @@
+package com.planme.alarms;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+
+public class WakeLockManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long now = 1000L;
+    private final int[] held = new int[WakeLockManager.PURPOSE_NAMES.length];
+
+    private WakeLockManager.Lock[] locks() {
+        WakeLockManager.Lock[] locks = new WakeLockManager.Lock[held.length];
+        for (int i = 0; i < locks.length; i++) {
+            int purpose = i;
+            locks[i] = new WakeLockManager.Lock() {
+                @Override
+                public void acquire(long timeoutMs) {
+                    held[purpose] = 1;
+                }
+
+                @Override
+                public void release() {
+                    held[purpose] = 0;
+                }
+            };
+        }
+        return locks;
+    }
+
+    @Test
+    public void overlappingHoldsShareOneLockAndAreAccountedPerAlarm() throws Exception {
+        File file = new File(folder.getRoot(), "power.bin");
+        WakeLockManager manager = new WakeLockManager(file, locks(), () -> now);
+
+        WakeLockManager.Hold first = manager.acquire(WakeLockManager.FIRE, 1);
+        now += 100;
+        WakeLockManager.Hold second = manager.acquire(WakeLockManager.FIRE, 2);
+        now += 200;
+        first.close();
+        first.close();
+        assertEquals(1, held[WakeLockManager.FIRE]);
+        assertEquals(1, manager.openHolds(WakeLockManager.FIRE));
+        now += 50;
+        second.close();
+        assertEquals(0, held[WakeLockManager.FIRE]);
+
+        WakeLockManager.Usage fire = manager.usage(WakeLockManager.FIRE);
+        assertEquals(2, fire.acquires);
+        assertEquals(300 + 250, fire.heldMs);
+        assertEquals(300, fire.maxHeldMs);
+        assertEquals(350, manager.lockHeldMs(WakeLockManager.FIRE));
+        assertEquals(300, manager.alarmUsage().get(1).heldMs);
+
+        // Persisted once the last hold closed
+        WakeLockManager restarted = new WakeLockManager(file, locks(), () -> now);
+        assertEquals(2, restarted.usage(WakeLockManager.FIRE).acquires);
+        assertEquals(350, restarted.lockHeldMs(WakeLockManager.FIRE));
+        Map<Integer, WakeLockManager.Usage> alarms = restarted.alarmUsage();
+        assertEquals(250, alarms.get(2).heldMs);
+    }
+
+    @Test
+    public void heldTimeIsBoundedByThePurposeTimeout() {
+        WakeLockManager manager = new WakeLockManager(new File(folder.getRoot(), "power.bin"), locks(), () -> now);
+        long timeout = WakeLockManager.TIMEOUTS_MS[WakeLockManager.FIRE];
+
+        WakeLockManager.Hold leaked = manager.acquire(WakeLockManager.FIRE, 7);
+        now += timeout * 3;
+        assertEquals(timeout, manager.lockHeldMs(WakeLockManager.FIRE));
+        leaked.close();
+
+        WakeLockManager.Usage usage = manager.alarmUsage().get(7);
+        assertEquals(timeout, usage.heldMs);
+        assertEquals(timeout, usage.maxHeldMs);
+        assertEquals(1, usage.timeouts);
+        assertEquals(timeout, manager.lockHeldMs(WakeLockManager.FIRE));
+    }
+}
@@ -1,13 +1,37 @@
 import { Capacitor } from '@capacitor/core';
 import { registerPlugin } from '@capacitor/core';
+import type { PluginListenerHandle } from '@capacitor/core';
 
 interface RealAlarmPluginInterface {
   scheduleRealAlarm(options: any): Promise<any>;
+  scheduleRealAlarms(options: any): Promise<any>;
+  syncAlarms(options: any): Promise<any>;
+  listAlarms(options: any): Promise<any>;
   cancelRealAlarm(options: any): Promise<any>;
   cancelAllRealAlarms(options: any): Promise<any>;
+  setSchedulingMode(options: any): Promise<any>;
+  setCoalescingWindow(options: any): Promise<any>;
+  getRestoreStats(options: any): Promise<any>;
+  getLatencyStats(options: any): Promise<any>;
+  dumpEventLog(options: any): Promise<any>;
+  getLaunchStats(options: any): Promise<any>;
+  getPowerStats(options: any): Promise<any>;
+  getSchedulingStats(options: any): Promise<any>;
   checkAndRequestExactAlarm(options: any): Promise<any>;
   checkAndRequestIgnoreBatteryOptimizations(options: any): Promise<any>;
   ping(options: any): Promise<any>;
+  addListener(eventName: AlarmEventName, listener: (event: AlarmEvent) => void): Promise<PluginListenerHandle>;
+}
+
+export type AlarmEventName = 'alarmFired' | 'alarmSnoozed' | 'alarmDismissed';
+
+// Pushed by the native side; events that happened while the app was closed arrive with replayed = true
+export interface AlarmEvent {
+  alarmId: number;
+  scheduledTime: number;
+  time: number;
+  replayed: boolean;
+  snoozeMinutes?: number;
 }
 
 const RealAlarmPlugin = registerPlugin<RealAlarmPluginInterface>('RealAlarm');
@@ -26,6 +50,23 @@ export interface RealAlarmConfig {
   };
   openPage?: string;
   repeatDaily?: boolean;
+  recurrence?: RecurrenceRule;
+  // 'exact' for hard wake-ups, 'windowed' for flexible reminders the OS may batch within ten minutes,
+  // 'inexact' for background nudges. priority 'high' | 'normal' | 'low' is the same choice. Default is exact.
+  deliveryClass?: DeliveryClass;
+  priority?: 'high' | 'normal' | 'low';
+}
+
+export type DeliveryClass = 'exact' | 'windowed' | 'inexact';
+
+// Native recurrence rule; the alarm re-arms itself after each fire without the WebView.
+// weekdays use 1 = Monday ... 7 = Sunday, exclude takes local dates as 'yyyy-MM-dd'.
+export interface RecurrenceRule {
+  type: 'daily' | 'weekly' | 'interval' | 'monthly';
+  weekdays?: number[];
+  intervalMinutes?: number;
+  dayOfMonth?: number;
+  exclude?: string[];
 }
 
 export class RealAlarmService {
@@ -101,17 +142,7 @@ export class RealAlarmService {
         timeUntilAlarmSeconds: Math.round(timeUntilAlarm / 1000)
       });
 
-      const alarmData = {
-        alarmId: alarmId,
-        title: config.title,
-        body: config.body,
-        scheduledTime: scheduledTime,
-        color: config.color || 'red',
-        sound: config.sound || 'alarm_sound',
-        vibration: config.vibration || [0, 1000, 1000, 1000, 1000, 1000],
-        snoozeMinutes: config.actions?.snooze?.minutes || 5,
-        repeatDaily: config.repeatDaily || false
-      };
+      const alarmData = this.toNativeAlarm(config, alarmId);
       
       console.log('🚨 [SCHEDULE] Calling native method with data:', alarmData);
       
@@ -119,7 +150,7 @@ export class RealAlarmService {
       const result = await this.callNativeMethod('scheduleRealAlarm', alarmData);
       
       console.log('✅ [SCHEDULE] Native method call completed:', result);
-      console.log('✅ [SCHEDULE] Alarm scheduled successfully!');
+      console.log(`✅ [SCHEDULE] Alarm scheduled successfully with ${result?.deliveryClass ?? 'exact'} delivery!`);
 
     } catch (error) {
       console.error('❌ [SCHEDULE] Error scheduling real alarm:', error);
@@ -127,6 +158,93 @@ export class RealAlarmService {
     }
   }
 
+  async scheduleAlarms(configs: RealAlarmConfig[]): Promise<any> {
+    console.log(`🚨 [SCHEDULE] Scheduling ${configs.length} alarms in one batch...`);
+    
+    try {
+      if (!Capacitor.isNativePlatform()) {
+        console.error('❌ [SCHEDULE] Not on native platform, cannot schedule real alarms');
+        throw new Error('Real alarms only work on native platforms');
+      }
+
+      // One bridge call for the whole batch instead of one per alarm
+      const alarms = configs.map(config => this.toNativeAlarm(config, this.nextId++));
+      const result = await this.callNativeMethod('scheduleRealAlarms', { alarms });
+      
+      console.log(`✅ [SCHEDULE] Batch scheduled: ${result?.scheduled ?? alarms.length}/${alarms.length}`);
+      return result;
+
+    } catch (error) {
+      console.error('❌ [SCHEDULE] Error scheduling real alarms:', error);
+      throw error;
+    }
+  }
+
+  // One page of native alarms in time order; pass the returned nextCursor to continue, absent on the last page
+  async listAlarms(options: { from?: number; to?: number; limit?: number; cursor?: string } = {}): Promise<any> {
+    return this.callNativeMethod('listAlarms', options);
+  }
+
+  // Subscribes to native fire/snooze/dismiss events instead of polling for them
+  async addAlarmListener(eventName: AlarmEventName, listener: (event: AlarmEvent) => void): Promise<PluginListenerHandle> {
+    console.log(`🔌 [NATIVE] Listening for RealAlarmPlugin.${eventName}...`);
+    return RealAlarmPlugin.addListener(eventName, listener);
+  }
+
+  // Makes the native registry match configs exactly; only added, removed or changed alarms touch
+  // AlarmManager. Native ids are derived from config.id so they stay stable across app launches.
+  // Only needed when the app opens: firing, re-arming, snoozes and restore after reboot all run
+  // natively without the WebView, and what happened meanwhile arrives through the alarm listeners.
+  async syncAlarms(configs: RealAlarmConfig[]): Promise<any> {
+    try {
+      if (!Capacitor.isNativePlatform()) {
+        throw new Error('Real alarms only work on native platforms');
+      }
+
+      const alarms = configs.map(config => this.toNativeAlarm(config, this.stableAlarmId(config.id)));
+      const owners = new Map<number, string>();
+      configs.forEach((config, i) => {
+        const other = owners.get(alarms[i].alarmId);
+        if (other !== undefined && other !== config.id) {
+          throw new Error(`Alarms ${other} and ${config.id} map to the same native id ${alarms[i].alarmId}`);
+        }
+        owners.set(alarms[i].alarmId, config.id);
+      });
+      const result = await this.callNativeMethod('syncAlarms', { alarms });
+      console.log(`✅ [SYNC] Alarms synced: +${result?.added} -${result?.removed} ~${result?.changed} =${result?.unchanged}`);
+      return result;
+    } catch (error) {
+      console.error('❌ [SYNC] Error syncing alarms:', error);
+      throw error;
+    }
+  }
+
+  // Positive 30-bit hash of the app's alarm id, below the ids native code allocates from (1 << 30)
+  private stableAlarmId(id: string): number {
+    let hash = 0;
+    for (let i = 0; i < id.length; i++) {
+      hash = (hash * 31 + id.charCodeAt(i)) | 0;
+    }
+    return (hash & 0x3fffffff) || 1;
+  }
+
+  private toNativeAlarm(config: RealAlarmConfig, alarmId: number) {
+    return {
+      alarmId: alarmId,
+      title: config.title,
+      body: config.body,
+      scheduledTime: config.scheduledTime.getTime(),
+      color: config.color || 'red',
+      sound: config.sound || 'alarm_sound',
+      vibration: config.vibration || [0, 1000, 1000, 1000, 1000, 1000],
+      snoozeMinutes: config.actions?.snooze?.minutes || 5,
+      repeatDaily: config.repeatDaily || false,
+      recurrence: config.recurrence,
+      deliveryClass: config.deliveryClass,
+      priority: config.priority
+    };
+  }
+
   async cancelAlarm(alarmId: number): Promise<void> {
     try {
       if (!Capacitor.isNativePlatform()) {
@@ -155,6 +273,63 @@ export class RealAlarmService {
     }
   }
 
+  // 'perAlarm' registers every alarm with AlarmManager; 'nextAlarm' registers only the earliest one
+  async setSchedulingMode(mode: 'perAlarm' | 'nextAlarm'): Promise<any> {
+    try {
+      const result = await this.callNativeMethod('setSchedulingMode', { mode });
+      console.log('⚙️ [MODE] Scheduling mode set:', result);
+      return result;
+    } catch (error) {
+      console.error('❌ [MODE] Error setting scheduling mode:', error);
+      throw error;
+    }
+  }
+
+  // Alarms due within this many seconds of each other ring together in one wakeup; 0 turns it off
+  async setCoalescingWindow(seconds: number): Promise<any> {
+    try {
+      const result = await this.callNativeMethod('setCoalescingWindow', { seconds });
+      console.log('⚙️ [MODE] Coalescing window set:', result);
+      return result;
+    } catch (error) {
+      console.error('❌ [MODE] Error setting coalescing window:', error);
+      throw error;
+    }
+  }
+
+  // Outcome and duration of the last native restore after reboot or app update, and of the last
+  // re-anchoring after a clock or time-zone change (reanchor.changed alarms moved)
+  async getRestoreStats(): Promise<any> {
+    return this.callNativeMethod('getRestoreStats', {});
+  }
+
+  // Fire-path latency histograms (receive, notify, activity, sound, firstFrame) measured from the scheduled time
+  async getLatencyStats(reset = false): Promise<any> {
+    return this.callNativeMethod('getLatencyStats', { reset });
+  }
+
+  // How many duplicate launches of an already ringing fire were suppressed natively
+  async getLaunchStats(reset = false): Promise<any> {
+    return this.callNativeMethod('getLaunchStats', { reset });
+  }
+
+  // Wake-lock acquires and held time per purpose (fire, ring) and per alarm, with each purpose's timeout
+  async getPowerStats(reset = false): Promise<any> {
+    return this.callNativeMethod('getPowerStats', { reset });
+  }
+
+  // Native scheduling queue: depth, coalesced and rejected requests, and wait/service time percentiles in
+  // microseconds. Schedule and cancel calls for one alarm that are still queued when a later call for it
+  // arrives resolve with superseded = true.
+  async getSchedulingStats(reset = false): Promise<any> {
+    return this.callNativeMethod('getSchedulingStats', { reset });
+  }
+
+  // Decoded native event log (receiver, activity and plugin events), oldest first
+  async dumpEventLog(limit?: number, clear = false): Promise<any> {
+    return this.callNativeMethod('dumpEventLog', limit !== undefined ? { limit, clear } : { clear });
+  }
+
   async ping(): Promise<any> {
     try {
       console.log('🏓 [PING] Testing native plugin connection...');
@@ -183,6 +358,18 @@ export class RealAlarmService {
               console.log('🔌 [NATIVE] Calling RealAlarmPlugin.scheduleRealAlarm...');
               result = await RealAlarmPlugin.scheduleRealAlarm(data);
               break;
+            case 'scheduleRealAlarms':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.scheduleRealAlarms...');
+              result = await RealAlarmPlugin.scheduleRealAlarms(data);
+              break;
+            case 'syncAlarms':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.syncAlarms...');
+              result = await RealAlarmPlugin.syncAlarms(data);
+              break;
+            case 'listAlarms':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.listAlarms...');
+              result = await RealAlarmPlugin.listAlarms(data);
+              break;
             case 'cancelRealAlarm':
               console.log('🔌 [NATIVE] Calling RealAlarmPlugin.cancelRealAlarm...');
               result = await RealAlarmPlugin.cancelRealAlarm(data);
@@ -191,6 +378,38 @@ export class RealAlarmService {
               console.log('🔌 [NATIVE] Calling RealAlarmPlugin.cancelAllRealAlarms...');
               result = await RealAlarmPlugin.cancelAllRealAlarms(data);
               break;
+            case 'setSchedulingMode':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.setSchedulingMode...');
+              result = await RealAlarmPlugin.setSchedulingMode(data);
+              break;
+            case 'setCoalescingWindow':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.setCoalescingWindow...');
+              result = await RealAlarmPlugin.setCoalescingWindow(data);
+              break;
+            case 'getRestoreStats':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.getRestoreStats...');
+              result = await RealAlarmPlugin.getRestoreStats(data);
+              break;
+            case 'getLatencyStats':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.getLatencyStats...');
+              result = await RealAlarmPlugin.getLatencyStats(data);
+              break;
+            case 'getLaunchStats':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.getLaunchStats...');
+              result = await RealAlarmPlugin.getLaunchStats(data);
+              break;
+            case 'getPowerStats':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.getPowerStats...');
+              result = await RealAlarmPlugin.getPowerStats(data);
+              break;
+            case 'getSchedulingStats':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.getSchedulingStats...');
+              result = await RealAlarmPlugin.getSchedulingStats(data);
+              break;
+            case 'dumpEventLog':
+              console.log('🔌 [NATIVE] Calling RealAlarmPlugin.dumpEventLog...');
+              result = await RealAlarmPlugin.dumpEventLog(data);
+              break;
             case 'checkAndRequestExactAlarm':
               console.log('🔌 [NATIVE] Calling RealAlarmPlugin.checkAndRequestExactAlarm...');
               result = await RealAlarmPlugin.checkAndRequestExactAlarm(data);